@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * <p>A minimal benchmark harness. Each benchmark is warmed up and then run for a fixed number of operations on the
+ * current thread, reporting throughput and the bytes allocated per operation as reported by the HotSpot
+ * <tt>ThreadMXBean</tt>.
+ */
+public abstract class Benchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    /**
+     * Sink for the results of each operation, so that the JIT can not eliminate the work
+     */
+    private static volatile int sink;
+
+    private final String name;
+
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Performs one operation
+     *
+     * @param index the index of the operation, to be used for cycling through inputs
+     * @return any value derived from the result of the operation
+     */
+    protected abstract int run(int index);
+
+    /**
+     * Runs the given benchmarks and prints the results
+     *
+     * @param operations the number of operations to run in each round
+     * @param benchmarks the benchmarks to run
+     */
+    public static void runAll(int operations, Benchmark... benchmarks) {
+        System.out.println(String.format("%-36s %14s %10s %12s %12s", "Benchmark", "ops/s", "ns/op", "bytes/op", "MB/s alloc"));
+        for (Benchmark benchmark : benchmarks) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                benchmark.measure(operations);
+            }
+            System.out.println(benchmark.measure(operations));
+        }
+    }
+
+    private Result measure(int operations) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int result = 0;
+
+        long bytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long time = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            result += run(i);
+        }
+        time = System.nanoTime() - time;
+        bytes = threadMXBean.getThreadAllocatedBytes(threadId) - bytes;
+
+        sink += result;
+        return new Result(operations, time, bytes);
+    }
+
+    private class Result {
+        private final int operations;
+        private final long nanos;
+        private final long bytes;
+
+        private Result(int operations, long nanos, long bytes) {
+            this.operations = operations;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format("%-36s %14.0f %10.1f %12.1f %12.1f", name, operations / seconds,
+                    (double) nanos / operations, (double) bytes / operations, bytes / seconds / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Benchmarks for the code run on every change received from the browser: string handling and route
+ * detection.
+ * <p>Run with <tt>java com.github.cssxfire.HotPathBenchmarks [operations]</tt> with the IntelliJ SDK on the class path.
+ */
+public class HotPathBenchmarks {
+    private static final int SELECTOR_LIST_SIZE = 40;
+    private static final int ROUTE_COUNT = 500;
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        final String[] rawSelectors = createSelectorLists();
+        final String[] urls = createUrls();
+
+        final Map<VirtualFile, String> routes = createRoutes();
+        final String[] paths = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            paths[i] = StringUtils.extractPath(urls[i]);
+        }
+
+        Benchmark.runAll(operations,
+                new Benchmark("StringUtils.normalizeWhitespace") {
+                    protected int run(int index) {
+                        return StringUtils.normalizeWhitespace(rawSelectors[index % rawSelectors.length]).length();
+                    }
+                },
+                new Benchmark("StringUtils.extractPath") {
+                    protected int run(int index) {
+                        return StringUtils.extractPath(urls[index % urls.length]).length();
+                    }
+                },
+                new Benchmark("RouteUtils.detectLocalFile") {
+                    protected int run(int index) {
+                        return RouteUtils.detectLocalFile(routes, paths[index % paths.length]) != null ? 1 : 0;
+                    }
+                });
+    }
+
+    /**
+     * Creates comma separated selector lists, formatted the way they are usually written in a stylesheet
+     */
+    private static String[] createSelectorLists() {
+        String[] lists = new String[16];
+        for (int i = 0; i < lists.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < SELECTOR_LIST_SIZE; j++) {
+                if (j > 0) {
+                    sb.append(",\n    ");
+                }
+                sb.append("#content  .module-").append(i).append(" > ul.nav-").append(j).append("   li a:hover");
+            }
+            lists[i] = sb.toString();
+        }
+        return lists;
+    }
+
+    private static String[] createUrls() {
+        String[] urls = new String[64];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = "http://localhost:8080/static/app/module-" + (i * 7 % ROUTE_COUNT) + "/css/style-" + i
+                    + ".css?v=" + (1287337838 + i) + "#top";
+        }
+        return urls;
+    }
+
+    /**
+     * Creates route mappings for directories, one per module
+     */
+    private static Map<VirtualFile, String> createRoutes() {
+        VirtualFile target = new LightVirtualFile("style.css");
+        Map<VirtualFile, String> routes = new HashMap<VirtualFile, String>();
+        routes.put(new RouteDirectory("static", target), "/static");
+        for (int i = 0; i < ROUTE_COUNT; i++) {
+            routes.put(new RouteDirectory("module-" + i, target), "/static/app/module-" + i);
+        }
+        return routes;
+    }
+
+    /**
+     * A directory resolving all relative paths to the same file, so that only the route detection is measured
+     */
+    private static class RouteDirectory extends LightVirtualFile {
+        private final VirtualFile target;
+
+        private RouteDirectory(@NotNull String name, @NotNull VirtualFile target) {
+            super(name);
+            this.target = target;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return true;
+        }
+
+        @Override
+        public VirtualFile findFileByRelativePath(@NotNull String relPath) {
+            return target;
+        }
+    }
+}
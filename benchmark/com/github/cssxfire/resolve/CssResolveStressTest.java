@@ -0,0 +1,130 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.resolve;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.jetbrains.plugins.scss.psi.SassScssVariableDeclaration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Resolves SCSS variables from several threads at once, checking that concurrent resolves agree and measuring how
+ * the throughput scales with the number of threads. Each thread resolves in its own read action, with its own
+ * processor and resolve state.
+ * <p>Names which are not declared are resolved by a full walk of the file and its imports every time, so they
+ * measure the resolve itself. Declared names are mostly answered from the resolve cache after the first lookup.
+ * <p>Requires the SASS plugin. The scaling is printed only, as wall clock timings vary too much between machines to
+ * be asserted; the check is that every concurrent resolve finds the right declaration.
+ */
+public class CssResolveStressTest extends LightPlatformCodeInsightFixtureTestCase {
+    private static final int VARIABLES = 200;
+    private static final int OPERATIONS_PER_THREAD = 2000;
+    private static final AtomicInteger missingNames = new AtomicInteger();
+
+    private PsiElement base;
+    private final List<String> names = new ArrayList<String>();
+    private final List<PsiElement> declarations = new ArrayList<PsiElement>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        StringBuilder variables = new StringBuilder();
+        for (int i = 0; i < VARIABLES; i++) {
+            variables.append("$v").append(i).append(": #").append(100 + i).append(";\n");
+        }
+        PsiFile colors = myFixture.addFileToProject("_colors.scss", variables.toString());
+        myFixture.addFileToProject("_base.scss", "@import \"colors\";\n.base { color: $v0; }\n");
+        PsiFile main = myFixture.addFileToProject("main.scss", "@import \"base\";\n.main { color: $v1; }\n");
+        base = main.findElementAt(main.getText().indexOf(".main"));
+        assertNotNull(base);
+        for (SassScssVariableDeclaration declaration : PsiTreeUtil.findChildrenOfType(colors, SassScssVariableDeclaration.class)) {
+            names.add(declaration.getName());
+            declarations.add(declaration);
+        }
+        assertEquals(VARIABLES, names.size());
+    }
+
+    public void testConcurrentResolve() throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        double singleThreaded = 0;
+        System.out.println(String.format("%8s %14s %10s", "threads", "resolves/s", "speedup"));
+        for (int threads = 1; threads <= Math.max(2, cores); threads *= 2) {
+            double throughput = measure(threads);
+            if (threads == 1) {
+                singleThreaded = throughput;
+            }
+            System.out.println(String.format("%8d %14.0f %10.2f", threads, throughput, throughput / singleThreaded));
+        }
+    }
+
+    /**
+     * Resolves on the given number of threads, alternating declared and undeclared names
+     *
+     * @return the resolves per second
+     */
+    private double measure(final int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                            resolveAndCheck(offset + i);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            long time = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            time = System.nanoTime() - time;
+            return threads * OPERATIONS_PER_THREAD / (time / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void resolveAndCheck(final int index) {
+        final boolean declared = index % 2 == 0;
+        final String name = declared ? names.get(index % VARIABLES) : "$missing" + missingNames.incrementAndGet();
+        PsiElement resolved = ApplicationManager.getApplication().runReadAction(new Computable<PsiElement>() {
+            public PsiElement compute() {
+                return CssResolveUtils.resolveVariable(base, name);
+            }
+        });
+        if (declared) {
+            assertSame(name, declarations.get(index % VARIABLES), resolved);
+        } else {
+            assertNull(name, resolved);
+        }
+    }
+}
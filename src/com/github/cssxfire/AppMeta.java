@@ -37,6 +37,43 @@ public class AppMeta {
      * Reduce for @media flag
      */
     private boolean mediaReduce = false;
+    /**
+     * Use the selector based (NIO) web server instead of the legacy thread-per-connection server
+     */
+    private boolean nioWebServer = true;
+    /**
+     * Time in milliseconds incoming changes are collected, and rapid edits of the same property collapsed, before
+     * they are dispatched to the projects
+     */
+    private int coalesceWindow = 50;
+    /**
+     * Maximum number of selector (and media) searches cached per project
+     */
+    private int searchCacheSize = 500;
+
+    public int getSearchCacheSize() {
+        return searchCacheSize;
+    }
+
+    public void setSearchCacheSize(int searchCacheSize) {
+        this.searchCacheSize = searchCacheSize;
+    }
+
+    public int getCoalesceWindow() {
+        return coalesceWindow;
+    }
+
+    public void setCoalesceWindow(int coalesceWindow) {
+        this.coalesceWindow = coalesceWindow;
+    }
+
+    public boolean isNioWebServer() {
+        return nioWebServer;
+    }
+
+    public void setNioWebServer(boolean nioWebServer) {
+        this.nioWebServer = nioWebServer;
+    }
 
     public boolean isMediaReduce() {
         return mediaReduce;
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Collapses rapid edits of the same property, e.g. while dragging a value in the browser, before they are
+ * dispatched to the projects. Changes are collected for a short window, during which a newer change of the same
+ * property (same file, media, selector and property name) replaces the older one. When the window closes all
+ * collected changes are dispatched as one batch, in the order the properties were first changed.
+ * <p>A window of <tt>0</tt> disables coalescing - every batch received is dispatched right away.
+ *
+ * @see AppMeta#getCoalesceWindow()
+ */
+public class ChangesCoalescer {
+    private static final Logger LOG = Logger.getInstance(ChangesCoalescer.class.getName());
+
+    /**
+     * Receives the coalesced batches
+     */
+    public interface Dispatcher {
+        void dispatch(@NotNull List<FirebugChangesBean> changesBeans);
+    }
+
+    private final Dispatcher dispatcher;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CSS-X-Fire changes coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Runnable flushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Map<String, FirebugChangesBean> pending = new LinkedHashMap<String, FirebugChangesBean>();
+    private boolean flushScheduled = false;
+    private volatile int window;
+
+    private long receivedCount = 0;
+    private long mergedCount = 0;
+    private long dispatchedCount = 0;
+    private long batchCount = 0;
+
+    public ChangesCoalescer(@NotNull Dispatcher dispatcher, int window) {
+        this.dispatcher = dispatcher;
+        this.window = window;
+    }
+
+    /**
+     * Adds changes to the current window
+     *
+     * @param changesBeans the changes, in the order they were made
+     */
+    public synchronized void add(@NotNull Collection<FirebugChangesBean> changesBeans) {
+        for (FirebugChangesBean changesBean : changesBeans) {
+            receivedCount++;
+            if (pending.put(changesBean.getPropertyKey(), changesBean) != null) {
+                mergedCount++;
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (window <= 0) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Dispatches the changes of the current window right away, e.g. before an event that must be handled after them
+     */
+    public synchronized void flush() {
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<FirebugChangesBean> changesBeans = new ArrayList<FirebugChangesBean>(pending.values());
+        pending.clear();
+        dispatchedCount += changesBeans.size();
+        batchCount++;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Dispatching " + changesBeans.size() + " coalesced changes, " + mergedCount + " of " + receivedCount + " merged so far");
+        }
+        // dispatched while holding the lock so that batches are never reordered
+        dispatcher.dispatch(changesBeans);
+    }
+
+    /**
+     * Dispatches any pending changes and stops the timer
+     */
+    public void dispose() {
+        flush();
+        scheduler.shutdownNow();
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @param window the time in milliseconds changes are collected before they are dispatched, <tt>0</tt> to dispatch at once
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    /**
+     * @return the number of changes received
+     */
+    public synchronized long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     * @return the number of changes dropped because a newer change of the same property arrived within the window
+     */
+    public synchronized long getMergedCount() {
+        return mergedCount;
+    }
+
+    /**
+     * @return the number of changes dispatched to the projects
+     */
+    public synchronized long getDispatchedCount() {
+        return dispatchedCount;
+    }
+
+    /**
+     * @return the number of batches dispatched to the projects
+     */
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "received=" + receivedCount + ", merged=" + mergedCount + ", dispatched=" + dispatchedCount + ", batches=" + batchCount;
+    }
+}
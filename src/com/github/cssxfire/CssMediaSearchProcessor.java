@@ -16,9 +16,8 @@
 
 package com.github.cssxfire;
 
-import com.intellij.psi.PsiElement;
+import com.github.cssxfire.index.CssMediaIndex;
 import com.intellij.psi.css.CssMediumList;
-import com.intellij.psi.search.TextOccurenceProcessor;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashSet;
@@ -28,38 +27,47 @@ import java.util.Set;
  * Created by IntelliJ IDEA.
  * User: Ronnie
  */
-public class CssMediaSearchProcessor implements TextOccurenceProcessor {
+public class CssMediaSearchProcessor {
     private final Set<CssMediumList> mediaLists = new HashSet<CssMediumList>();
     @NotNull
     private String media;
     @NotNull
-    private String word;
+    private String key;
 
     public CssMediaSearchProcessor(@NotNull String media) {
         this.media = StringUtils.normalizeWhitespace(media);
-        this.word = StringUtils.extractSearchWord(this.media);
+        this.key = CssMediaIndex.createKey(this.media);
     }
 
     /**
-     * Get the word to use when using {@link com.intellij.psi.search.PsiSearchHelper} to process elements with word
-     *
-     * @return the word to use in search
+     * @return the key of the media query in the {@link com.github.cssxfire.index.CssMediaIndex}
      */
     @NotNull
-    public String getSearchWord() {
-        return word;
+    public String getKey() {
+        return key;
     }
 
+    /**
+     * Adds an element known to match the media query, e.g. found in the {@link com.github.cssxfire.index.CssMediaIndex}
+     *
+     * @param mediumList the matching medium list
+     */
+    public void addResult(@NotNull CssMediumList mediumList) {
+        mediaLists.add(mediumList);
+    }
 
-    public boolean execute(PsiElement element, int offsetInElement) {
-        CssMediumList mediumList = CssUtils.findMediumList(element);
-        if (mediumList != null) {
-            String text = mediumList.getText();
-            if (media.equals(StringUtils.normalizeWhitespace(text))) {
-                mediaLists.add(mediumList);
+    /**
+     * Check if the collected elements are still valid, i.e. the PSI has not been changed since the search
+     *
+     * @return <tt>true</tt> if all collected elements are valid
+     */
+    public boolean isValid() {
+        for (CssMediumList mediaList : mediaLists) {
+            if (!mediaList.isValid()) {
+                return false;
             }
         }
-        return false;
+        return true;
     }
 
     public Set<CssMediumList> getMediaLists() {
@@ -25,6 +25,7 @@ import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Ref;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
@@ -32,12 +33,20 @@ import com.intellij.psi.PsiFileFactory;
 import com.intellij.psi.css.*;
 import com.intellij.psi.search.PsiElementProcessor;
 import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.xml.XmlToken;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -52,6 +61,8 @@ public class CssUtils {
             FileTypeManager.getInstance().getStdFileType("SASS"),
             FileTypeManager.getInstance().getStdFileType("SCSS")
     );
+    private static final FileType CSS_FILETYPE = FileTypeManager.getInstance().getStdFileType("CSS");
+    private static final Key<CachedValue<List<CssDeclaration>>> MIXIN_DECLARATIONS = Key.create("MIXIN_DECLARATIONS");
 
     public static CssDeclaration createDeclaration(Project project, String selector, String property, String value, boolean important) {
         CSSLanguage cssLanguage = Language.findInstance(CSSLanguage.class);
@@ -76,6 +87,42 @@ public class CssUtils {
         return findFirstChildOfType(dummyFile, CssTermList.class);
     }
 
+    /**
+     * Checks, without parsing, that a value can make up a declaration on its own: it must not be blank, must have
+     * balanced quotes, parentheses and brackets, and must not end the declaration or the block outside of those.
+     *
+     * @param value the value of a declaration
+     * @return <tt>true</tt> if the value is well formed
+     */
+    public static boolean isWellFormedValue(@NotNull String value) {
+        if (value.trim().length() == 0) {
+            return false;
+        }
+        char quote = 0;
+        int depth = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '(' || c == '[') {
+                depth++;
+            } else if (c == ')' || c == ']') {
+                if (--depth < 0) {
+                    return false;
+                }
+            } else if (depth == 0 && (c == ';' || c == '{' || c == '}')) {
+                return false;
+            }
+        }
+        return quote == 0 && depth == 0;
+    }
+
     private static <T extends PsiElement> T findFirstChildOfType(@NotNull PsiElement element, Class<T> type) {
         PsiElement[] children = element.getChildren();
         for (PsiElement child : children) {
@@ -161,22 +208,81 @@ public class CssUtils {
             }
         }
         if (isDynamicCssLanguage(block) && ProjectSettings.getInstance(block.getProject()).isResolveMixins()) {
-            return PsiTreeUtil.processElements(block, new PsiElementProcessor() {
-                public boolean execute(@NotNull PsiElement element) {
-                    PsiElement[] targets = GotoDeclarationResolver.INSTANCE.getGotoDeclarationTargets(element, null);
-                    if (targets != null && targets.length == 1) {
-                        PsiElement resolved = targets[0];
-                        if (resolved instanceof CssRuleset) {
-                            if (!processCssDeclarations(((CssRuleset) resolved).getBlock(), declarationProcessor)) {
-                                return false;
-                            }
+            for (CssDeclaration declaration : getMixinDeclarations(block)) {
+                if (!declarationProcessor.execute(declaration)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the declarations a block contributes through mixins, including mixins used by those mixins. The result is
+     * cached on the block until any stylesheet in the project is modified, since a mixin may resolve differently after
+     * a change in a file which was not visited, e.g. a new import or a new ruleset with the same name.
+     *
+     * @param block the block using mixins
+     * @return the declarations of the used mixins, in order of use
+     */
+    @NotNull
+    private static List<CssDeclaration> getMixinDeclarations(@NotNull final CssBlock block) {
+        return CachedValuesManager.getManager(block.getProject()).getCachedValue(block, MIXIN_DECLARATIONS, new CachedValueProvider<List<CssDeclaration>>() {
+            public Result<List<CssDeclaration>> compute() {
+                List<CssDeclaration> declarations = new ArrayList<CssDeclaration>();
+                collectMixinDeclarations(block, declarations, new HashSet<CssBlock>());
+                return Result.create(declarations, SearchProcessorCache.getInstance(block.getProject()).getStylesheetModificationTracker());
+            }
+        }, false);
+    }
+
+    private static void collectMixinDeclarations(@NotNull CssBlock block, @NotNull final List<CssDeclaration> declarations,
+                                                 @NotNull final Set<CssBlock> path) {
+        if (!path.add(block)) {
+            // Mixin using itself
+            return;
+        }
+        PsiTreeUtil.processElements(block, new PsiElementProcessor() {
+            public boolean execute(@NotNull PsiElement element) {
+                if (!isMixinReferenceCandidate(element)) {
+                    return true;
+                }
+                PsiElement[] targets = GotoDeclarationResolver.INSTANCE.getGotoDeclarationTargets(element, null);
+                if (targets != null && targets.length == 1 && targets[0] instanceof CssRuleset) {
+                    CssBlock mixinBlock = ((CssRuleset) targets[0]).getBlock();
+                    if (mixinBlock != null) {
+                        CssDeclaration[] mixinDeclarations = PsiTreeUtil.getChildrenOfType(mixinBlock, CssDeclaration.class);
+                        if (mixinDeclarations != null) {
+                            declarations.addAll(Arrays.asList(mixinDeclarations));
                         }
+                        collectMixinDeclarations(mixinBlock, declarations, path);
                     }
-                    return true;
                 }
-            });
+                return true;
+            }
+        });
+        path.remove(block);
+    }
+
+    /**
+     * Only Less mixin calls resolve to a ruleset, i.e. a name token preceded by <tt>.</tt> or <tt>#</tt> as matched by
+     * {@link GotoDeclarationResolver}. The call elements themselves belong to the optional Less plugin, so the tokens
+     * are checked instead. Variables and Sass <tt>@include</tt> (resolving to a mixin declaration) are skipped.
+     */
+    private static boolean isMixinReferenceCandidate(@NotNull PsiElement element) {
+        if (!(element instanceof XmlToken)) {
+            return false;
         }
-        return true;
+        String text = element.getText();
+        if (text.startsWith("$") || text.startsWith("@")) {
+            return false;
+        }
+        PsiElement prevSibling = element.getPrevSibling();
+        if (prevSibling == null) {
+            return false;
+        }
+        String prefix = prevSibling.getText();
+        return prefix.startsWith(".") || prefix.startsWith("#");
     }
 
     /**
@@ -191,6 +297,26 @@ public class CssUtils {
         return !(fileType instanceof PlainTextFileType) && DYNAMIC_CSS_FILETYPES.contains(fileType);
     }
 
+    /**
+     * Checks if the file type is CSS, Less or Sass
+     *
+     * @param fileType a file type
+     * @return <tt>true</tt> for stylesheet file types
+     */
+    public static boolean isStylesheetFileType(@NotNull FileType fileType) {
+        return !(fileType instanceof PlainTextFileType) && (fileType == CSS_FILETYPE || DYNAMIC_CSS_FILETYPES.contains(fileType));
+    }
+
+    /**
+     * Checks if the file is a stylesheet, i.e. a CSS, Less or Sass file
+     *
+     * @param file a file
+     * @return <tt>true</tt> if the file language is CSS or a dialect of it, or if the file type is Less/Sass
+     */
+    public static boolean isStylesheet(@NotNull PsiFile file) {
+        return file.getLanguage().isKindOf(Language.findInstance(CSSLanguage.class)) || isDynamicCssLanguage(file);
+    }
+
     @Nullable
     public static CssMediumList findMediumList(@Nullable PsiElement element) {
         while (element != null) {
@@ -16,7 +16,10 @@
 
 package com.github.cssxfire;
 
+import com.github.cssxfire.webserver.NioWebServer;
 import com.github.cssxfire.webserver.SimpleWebServer;
+import com.github.cssxfire.webserver.WebServer;
+import com.github.cssxfire.webserver.WebSocket;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.components.*;
@@ -26,8 +29,10 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.net.BindException;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by IntelliJ IDEA.
@@ -41,8 +46,12 @@ public class CssXFireConnector implements ApplicationComponent, PersistentStateC
     private static final Logger LOG = Logger.getInstance(CssXFireConnector.class.getName());
 
     private AppMeta appMeta = new AppMeta();
-    private SimpleWebServer webServer;
-    private Collection<IncomingChangesComponent> incomingChangesComponents = new ArrayList<IncomingChangesComponent>();
+    /**
+     * Assigned on start and stop, read from the threads notifying the browser
+     */
+    private volatile WebServer webServer;
+    private ChangesCoalescer changesCoalescer;
+    private Collection<IncomingChangesComponent> incomingChangesComponents = new CopyOnWriteArrayList<IncomingChangesComponent>();
     private boolean initialized = false;
 
     public static CssXFireConnector getInstance() {
@@ -57,10 +66,16 @@ public class CssXFireConnector implements ApplicationComponent, PersistentStateC
     }
 
     public void initComponent() {
+        changesCoalescer = new ChangesCoalescer(new ChangesCoalescer.Dispatcher() {
+            public void dispatch(@NotNull List<FirebugChangesBean> changesBeans) {
+                dispatchCss(changesBeans);
+            }
+        }, appMeta.getCoalesceWindow());
+
         // start web server
         try {
-            webServer = new SimpleWebServer();
-            new Thread(webServer).start();
+            webServer = appMeta.isNioWebServer() ? new NioWebServer() : new SimpleWebServer();
+            new Thread(webServer, "CSS-X-Fire web server").start();
             initialized = true;
         } catch (BindException e) {
             LOG.error("Unable to start web server - address in use: ", e);
@@ -82,6 +97,12 @@ public class CssXFireConnector implements ApplicationComponent, PersistentStateC
             }
         }
         webServer = null;
+        if (changesCoalescer != null) {
+            changesCoalescer.dispose();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Coalesced changes: " + changesCoalescer);
+            }
+        }
     }
 
     public AppMeta getState() {
@@ -105,7 +126,19 @@ public class CssXFireConnector implements ApplicationComponent, PersistentStateC
         incomingChangesComponents.remove(incomingChangesComponent);
     }
 
+    /**
+     * Get the stage collapsing rapid edits of the same property, along with its counters
+     *
+     * @return the changes coalescer
+     */
+    public ChangesCoalescer getChangesCoalescer() {
+        return changesCoalescer;
+    }
+
     public void processEvent(final FirebugEvent event) {
+        // Changes received before the event must be handled before it
+        changesCoalescer.flush();
+
         // Dispatch the incoming event to every open project
         for (final IncomingChangesComponent incomingChangesComponent : incomingChangesComponents) {
             ApplicationManager.getApplication().invokeLater(new Runnable() {
@@ -117,13 +150,41 @@ public class CssXFireConnector implements ApplicationComponent, PersistentStateC
     }
 
     public void processCss(final FirebugChangesBean changesBean) {
-        // Dispatch the incoming change to every open project
+        processCss(Collections.singletonList(changesBean));
+    }
+
+    /**
+     * Dispatches a batch of changes, e.g. all properties of a pasted rule, as one unit to every open project.
+     * The changes are first passed through the {@link ChangesCoalescer}.
+     *
+     * @param changesBeans the changes, in the order they were made
+     */
+    public void processCss(final Collection<FirebugChangesBean> changesBeans) {
+        changesCoalescer.add(changesBeans);
+    }
+
+    private void dispatchCss(final Collection<FirebugChangesBean> changesBeans) {
+        // Dispatch the incoming changes to every open project
         for (final IncomingChangesComponent incomingChangesComponent : incomingChangesComponents) {
             ApplicationManager.getApplication().invokeLater(new Runnable() {
                 public void run() {
-                    incomingChangesComponent.processRule(changesBean);
+                    incomingChangesComponent.processRules(changesBeans);
                 }
             });
         }
     }
+
+    /**
+     * Tells the browser how many declarations in a project matched a change. Only clients connected to the
+     * push channel of the web server are notified.
+     *
+     * @param changesBean the change, as sent by the browser
+     * @param candidates  the number of matching declarations
+     */
+    public void notifyCandidates(@NotNull FirebugChangesBean changesBean, int candidates) {
+        WebServer webServer = this.webServer;
+        if (webServer != null) {
+            webServer.push(WebSocket.createMatchedMessage(changesBean, candidates));
+        }
+    }
 }
@@ -126,6 +126,17 @@ public class FirebugChangesBean {
         return important;
     }
 
+    /**
+     * Get a key identifying the changed property, i.e. the same for all changes of the same property
+     * in the same rule (path, media, selector and property name)
+     *
+     * @return the key
+     */
+    @NotNull
+    public String getPropertyKey() {
+        return path + '\n' + media + '\n' + selector + '\n' + property;
+    }
+
     @Override
     public String toString() {
         return "{media=" + media + ", path=" + path + ", filename=" + filename + ", selector=" + selector
@@ -18,17 +18,25 @@ package com.github.cssxfire;
 
 import com.github.cssxfire.action.Help;
 import com.github.cssxfire.filter.ReduceStrategyManager;
+import com.github.cssxfire.tree.CssChangesTreeModel;
 import com.github.cssxfire.tree.CssDeclarationPath;
 import com.github.cssxfire.tree.TreeViewModel;
 import com.github.cssxfire.ui.CssToolWindow;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationAdapter;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
 import com.intellij.openapi.wm.ToolWindowManager;
@@ -38,7 +46,15 @@ import com.intellij.ui.content.Content;
 import com.intellij.ui.content.ContentFactory;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Created by IntelliJ IDEA.
@@ -49,6 +65,21 @@ public class IncomingChangesComponent implements ProjectComponent {
 
     private final Project project;
     private final CssToolWindow cssToolWindow;
+    /**
+     * Candidate searches not yet rendered, keyed by {@link FirebugChangesBean#getPropertyKey()}
+     */
+    private final ConcurrentMap<String, ProgressIndicator> pendingSearches = new ConcurrentHashMap<String, ProgressIndicator>();
+    /**
+     * Runs candidate searches and browser events one at a time, in the order they arrive, so that their results are
+     * passed on to the event dispatch thread in that same order
+     */
+    private final ExecutorService pipeline = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CSS-X-Fire candidates search");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     private final PsiTreeChangeListener myListener = new PsiTreeChangeAdapter() {
         @Override
@@ -112,7 +143,7 @@ public class IncomingChangesComponent implements ProjectComponent {
     }
 
     public void disposeComponent() {
-        // TODO: insert component disposal logic here
+        pipeline.shutdownNow();
     }
 
     @NotNull
@@ -152,31 +183,146 @@ public class IncomingChangesComponent implements ProjectComponent {
     }
 
     public void processRule(final FirebugChangesBean changesBean) {
-        DumbService.getInstance(project).smartInvokeLater(new Runnable() {
+        processRules(Collections.singletonList(changesBean));
+    }
+
+    /**
+     * Processes a batch of changes in a single dispatch. The candidates are searched for in a background read action,
+     * while only the rendering in the tree view is done in the event dispatch thread. A search still pending when
+     * a newer change of the same property arrives is cancelled. Batches and events are handled in the order they
+     * arrive.
+     *
+     * @param changesBeans the changes, in the order they were made
+     */
+    public void processRules(final Collection<FirebugChangesBean> changesBeans) {
+        final List<CandidatesSearch> searches = new ArrayList<CandidatesSearch>();
+        for (FirebugChangesBean changesBean : changesBeans) {
+            CandidatesSearch search = new CandidatesSearch(changesBean);
+            ProgressIndicator previous = pendingSearches.put(changesBean.getPropertyKey(), search.indicator);
+            if (previous != null) {
+                // superseded by this change
+                previous.cancel();
+            }
+            searches.add(search);
+        }
+
+        pipeline.execute(new Runnable() {
             public void run() {
-                if (!project.isInitialized()) {
-                    return;
+                try {
+                    for (CandidatesSearch search : searches) {
+                        if (project.isDisposed() || search.indicator.isCanceled()) {
+                            continue;
+                        }
+                        search.candidates = searchCandidates(search);
+                        if (search.candidates != null) {
+                            CssXFireConnector.getInstance().notifyCandidates(search.changesBean, search.candidates.size());
+                        }
+                    }
+                } finally {
+                    ApplicationManager.getApplication().invokeLater(new Runnable() {
+                        public void run() {
+                            renderCandidates(searches);
+                        }
+                    });
                 }
+            }
+        });
+    }
 
-                // Apply routes
-                FirebugChangesBean routedChangesBean = changesBean.applyRoutes(project);
+    /**
+     * Searches for the candidates of a change in a read action which gives way to write actions. The search is
+     * cancelled when a write action is about to start, and started over in smart mode once the write action is done,
+     * so that a long search never blocks typing.
+     *
+     * @param search the search
+     * @return the candidates, or <tt>null</tt> if the search was cancelled by a newer change of the same property
+     */
+    private Collection<CssDeclarationPath> searchCandidates(final CandidatesSearch search) {
+        final Application application = ApplicationManager.getApplication();
+        while (!search.indicator.isCanceled() && !project.isDisposed()) {
+            DumbService.getInstance(project).waitForSmartMode();
+            final ProgressIndicator attempt = new SearchAttemptIndicator(search.indicator);
+            ApplicationAdapter writeActionListener = new ApplicationAdapter() {
+                @Override
+                public void beforeWriteActionStart(Object action) {
+                    attempt.cancel();
+                }
+            };
+            application.addApplicationListener(writeActionListener);
+            try {
+                Collection<CssDeclarationPath> candidates = ProgressManager.getInstance().runProcess(new Computable<Collection<CssDeclarationPath>>() {
+                    public Collection<CssDeclarationPath> compute() {
+                        return application.runReadAction(new Computable<Collection<CssDeclarationPath>>() {
+                            public Collection<CssDeclarationPath> compute() {
+                                if (attempt.isCanceled() || DumbService.isDumb(project)) {
+                                    // a write action is waiting, or indexing started - try again later
+                                    return null;
+                                }
+                                return findCandidates(search.changesBean);
+                            }
+                        });
+                    }
+                }, attempt);
+                if (candidates != null) {
+                    return candidates;
+                }
+            } catch (ProcessCanceledException e) {
+                // gave way to a write action, or a newer change of the same property has arrived
+            } finally {
+                application.removeApplicationListener(writeActionListener);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches for the candidates of a change. Must be invoked in a read action.
+     *
+     * @param changesBean the change
+     * @return the candidates remaining after reduction
+     */
+    private Collection<CssDeclarationPath> findCandidates(FirebugChangesBean changesBean) {
+        // Apply routes
+        FirebugChangesBean routedChangesBean = changesBean.applyRoutes(project);
 
-                // Get all possible candidates from the style info provided by Firebug
-                final Collection<CssDeclarationPath> candidates = IncomingChangesProcessor.getProjectCandidates(project, routedChangesBean);
+        // Get all possible candidates from the style info provided by Firebug
+        final Collection<CssDeclarationPath> candidates = IncomingChangesProcessor.getProjectCandidates(project, routedChangesBean);
 
-                // Reduce results if any of the filter options are checked
-                ReduceStrategyManager.getStrategy(project, routedChangesBean).reduce(candidates);
+        // Reduce results if any of the filter options are checked
+        ReduceStrategyManager.getStrategy(project, routedChangesBean).reduce(candidates);
 
-                // Render remaining candidates in the "Incoming changes" tree view
-                for (CssDeclarationPath candidate : candidates) {
-                    cssToolWindow.getTreeModel().intersect(candidate);
-                }
+        return candidates;
+    }
+
+    private void renderCandidates(List<CandidatesSearch> searches) {
+        for (CandidatesSearch search : searches) {
+            pendingSearches.remove(search.changesBean.getPropertyKey(), search.indicator);
+        }
+        if (!project.isInitialized() || project.isDisposed()) {
+            return;
+        }
 
-                if (ProjectSettings.getInstance(project).isAutoExpand()) {
-                    cssToolWindow.expandAll();
+        CssChangesTreeModel treeModel = cssToolWindow.getTreeModel();
+        treeModel.beginTransaction();
+        try {
+            for (CandidatesSearch search : searches) {
+                if (search.indicator.isCanceled() || search.candidates == null) {
+                    continue;
+                }
+                // Render remaining candidates in the "Incoming changes" tree view
+                for (CssDeclarationPath candidate : search.candidates) {
+                    if (candidate.getDeclarationNode().isValid()) {
+                        treeModel.intersect(candidate);
+                    }
                 }
             }
-        });
+        } finally {
+            treeModel.endTransaction();
+        }
+
+        if (ProjectSettings.getInstance(project).isAutoExpand()) {
+            cssToolWindow.expandAll();
+        }
     }
 
     @NotNull
@@ -184,17 +330,69 @@ public class IncomingChangesComponent implements ProjectComponent {
         return cssToolWindow;
     }
 
+    /**
+     * Handles a browser event after the changes received before it. A page refresh with auto clear enabled cancels the
+     * searches still pending, and clears the tree once the changes before it have been rendered.
+     *
+     * @param event the event
+     */
     public void handleEvent(final FirebugEvent event) {
-        DumbService.getInstance(project).smartInvokeLater(new Runnable() {
+        if (!"refresh".equals(event.getName()) || !ProjectSettings.getInstance(project).isAutoClear()) {
+            return;
+        }
+        for (ProgressIndicator indicator : pendingSearches.values()) {
+            indicator.cancel();
+        }
+        pipeline.execute(new Runnable() {
             public void run() {
-                if (!project.isInitialized()) {
-                    return;
-                }
-
-                if ("refresh".equals(event.getName()) && ProjectSettings.getInstance(project).isAutoClear()) {
-                    cssToolWindow.clearTree();
-                }
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                    public void run() {
+                        if (!project.isInitialized() || project.isDisposed()) {
+                            return;
+                        }
+                        cssToolWindow.clearTree();
+                    }
+                });
             }
         });
     }
+
+    /**
+     * The indicator of one attempt of a candidate search, cancelled by a write action or with the search itself
+     */
+    private static class SearchAttemptIndicator extends EmptyProgressIndicator {
+        private final ProgressIndicator searchIndicator;
+
+        private SearchAttemptIndicator(ProgressIndicator searchIndicator) {
+            this.searchIndicator = searchIndicator;
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return super.isCanceled() || searchIndicator.isCanceled();
+        }
+
+        @Override
+        public void checkCanceled() {
+            if (isCanceled()) {
+                throw new ProcessCanceledException();
+            }
+        }
+    }
+
+    /**
+     * The candidate search for one change
+     */
+    private static class CandidatesSearch {
+        private final FirebugChangesBean changesBean;
+        private final ProgressIndicator indicator = new EmptyProgressIndicator();
+        /**
+         * The result, set by the background stage unless cancelled
+         */
+        private volatile Collection<CssDeclarationPath> candidates;
+
+        private CandidatesSearch(FirebugChangesBean changesBean) {
+            this.changesBean = changesBean;
+        }
+    }
 }
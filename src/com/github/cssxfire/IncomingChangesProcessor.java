@@ -17,7 +17,9 @@
 package com.github.cssxfire;
 
 import com.github.cssxfire.tree.*;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Ref;
 import com.intellij.psi.PsiDirectory;
@@ -26,6 +28,7 @@ import com.intellij.psi.css.*;
 import com.intellij.psi.search.FilenameIndex;
 import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.PsiElementProcessor;
+import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -37,6 +40,10 @@ import java.util.*;
  */
 public class IncomingChangesProcessor {
     private static final Logger LOG = Logger.getInstance(IncomingChangesProcessor.class.getName());
+    /**
+     * The number of blocks from which the paths are assembled concurrently
+     */
+    private static final int CONCURRENCY_THRESHOLD = 8;
 
     private final Project project;
     private final FirebugChangesBean changesBean;
@@ -72,39 +79,18 @@ public class IncomingChangesProcessor {
         CssBlock[] cssBlocks = selectorProcessor.getBlocks();
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Searched CSS selectors for '" + selectorProcessor.getSearchWord()
-                    + "' ('" + selectorProcessor.getSelector() + "'), got " + cssBlocks.length + " results");
-        }
-
-        for (CssBlock block : cssBlocks) {
-            final Ref<CssDeclaration> destination = new Ref<CssDeclaration>();
-            CssUtils.processCssDeclarations(block, new PsiElementProcessor<CssDeclaration>() {
-                public boolean execute(@NotNull CssDeclaration declaration) {
-                    if (changesBean.getProperty().equals(declaration.getPropertyName())) {
-                        destination.set(declaration);
-                        return false;
-                    }
-                    return true;
-                }
-            });
-            CssDeclaration existingDeclaration = destination.get();
-            PsiFile file = block.getContainingFile().getOriginalFile();
-            CssDeclarationPath cssDeclarationPath;
-
-            if (existingDeclaration != null) {
-                // found existing declaration, possibly by resolving mixin
-                cssDeclarationPath = createPath(existingDeclaration, block);
-            } else {
-                // non-existing - create new
-                cssDeclarationPath = createNewPath(file, block);
-            }
-            if (cssDeclarationPath != null) {
-                candidates.add(cssDeclarationPath);
+            LOG.debug("Searched CSS selectors for '" + selectorProcessor.getSelector() + "', got " + cssBlocks.length + " results");
+        }
+
+        CssDeclarationPath[] blockPaths = createBlockPaths(cssBlocks);
+        for (int i = 0; i < cssBlocks.length; i++) {
+            if (blockPaths[i] != null) {
+                candidates.add(blockPaths[i]);
             }
 
             // remove from collected files and media
-            deleteCandidate(fileCandidates, file);
-            deleteCandidate(mediaCandidates, CssUtils.findMediumList(block));
+            deleteCandidate(fileCandidates, cssBlocks[i].getContainingFile().getOriginalFile());
+            deleteCandidate(mediaCandidates, CssUtils.findMediumList(cssBlocks[i]));
         }
 
         // add candidates from remaining media candidates
@@ -130,9 +116,79 @@ public class IncomingChangesProcessor {
             }
         }
 
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Declarations created without parsing in this session: " + CssNewDeclarationNode.getAvoidedParseCount());
+        }
+
         return candidates;
     }
 
+    /**
+     * Assembles the paths for the given blocks. When there are many blocks, e.g. for a generic selector, the paths
+     * are assembled concurrently. Must be invoked in a read action.
+     *
+     * @param cssBlocks the blocks matching the selector
+     * @return the path for each block, in the same order as the blocks, with <tt>null</tt> for blocks without a path
+     */
+    @NotNull
+    private CssDeclarationPath[] createBlockPaths(@NotNull final CssBlock[] cssBlocks) {
+        final CssDeclarationPath[] blockPaths = new CssDeclarationPath[cssBlocks.length];
+        final boolean[] done = new boolean[cssBlocks.length];
+
+        if (cssBlocks.length >= CONCURRENCY_THRESHOLD) {
+            List<Integer> indices = new ArrayList<Integer>(cssBlocks.length);
+            for (int i = 0; i < cssBlocks.length; i++) {
+                indices.add(i);
+            }
+            boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(indices, ProgressManager.getInstance().getProgressIndicator(), true, new Processor<Integer>() {
+                public boolean process(Integer index) {
+                    blockPaths[index] = createBlockPath(cssBlocks[index]);
+                    done[index] = true;
+                    return true;
+                }
+            });
+            if (!completed && LOG.isDebugEnabled()) {
+                LOG.debug("Concurrent processing of " + cssBlocks.length + " blocks was interrupted by a write action");
+            }
+        }
+
+        // process the remaining blocks (if any) in this thread, which holds the read lock
+        for (int i = 0; i < cssBlocks.length; i++) {
+            if (!done[i]) {
+                ProgressManager.checkCanceled();
+                blockPaths[i] = createBlockPath(cssBlocks[i]);
+            }
+        }
+        return blockPaths;
+    }
+
+    /**
+     * Assembles a path for the property in a given block, for an existing declaration if there is one
+     *
+     * @param block the block
+     * @return a path for the declaration, or <tt>null</tt> if the containing file or directory can not be determined
+     */
+    @Nullable
+    private CssDeclarationPath createBlockPath(@NotNull CssBlock block) {
+        final Ref<CssDeclaration> destination = new Ref<CssDeclaration>();
+        CssUtils.processCssDeclarations(block, new PsiElementProcessor<CssDeclaration>() {
+            public boolean execute(@NotNull CssDeclaration declaration) {
+                if (changesBean.getProperty().equals(declaration.getPropertyName())) {
+                    destination.set(declaration);
+                    return false;
+                }
+                return true;
+            }
+        });
+        CssDeclaration existingDeclaration = destination.get();
+        if (existingDeclaration != null) {
+            // found existing declaration, possibly by resolving mixin
+            return createPath(existingDeclaration, block);
+        }
+        // non-existing - create new
+        return createNewPath(block.getContainingFile().getOriginalFile(), block);
+    }
+
     /**
      * Assembles a path for a given CSS declaration and block.
      *
@@ -169,12 +225,13 @@ public class IncomingChangesProcessor {
         if (!file.isValid()) {
             return null;
         }
-        CssDeclaration declaration = CssUtils.createDeclaration(project, changesBean.getSelector(), changesBean.getProperty(), changesBean.getValue(), changesBean.isImportant());
-        if (declaration.getValue() == null) {
-            LOG.warn("Unable to crteate PSI from " + changesBean);
+        if (!CssUtils.isWellFormedValue(changesBean.getValue())) {
+            LOG.warn("Invalid value in " + changesBean);
             return null;
         }
-        CssDeclarationNode declarationNode = CssNewDeclarationNode.forDestination(declaration, destinationElement, changesBean.isDeleted());
+        // the declaration is created by the destination when applied
+        CssDeclarationNode declarationNode = CssNewDeclarationNode.forDestination(changesBean.getProperty(), changesBean.getValue(),
+                changesBean.isImportant(), destinationElement, changesBean.isDeleted());
         CssSelectorNode selectorNode = new CssSelectorNode(changesBean.getSelector(), destinationElement);
         CssFileNode fileNode = new CssFileNode(file);
         PsiDirectory directory = file.getParent();
@@ -198,7 +255,7 @@ public class IncomingChangesProcessor {
             Set<CssMediumList> mediaLists = mediaProcessor.getMediaLists();
 
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Searched CSS media for " + mediaProcessor.getSearchWord() + ", got " + mediaLists.size() + " results");
+                LOG.debug("Searched CSS media for " + mediaProcessor.getKey() + ", got " + mediaLists.size() + " results");
             }
 
             elements.addAll(mediaLists);
@@ -51,6 +51,11 @@ public class ProjectSettings implements ProjectComponent, PersistentStateCompone
     private boolean autoExpand;
     private boolean resolveVariables = true;
     private boolean resolveMixins = true;
+    /**
+     * Time in milliseconds to wait before saving the documents changed by applying changes, so that rapid applies
+     * share one save. Zero saves immediately.
+     */
+    private int saveDelay = 0;
 
     private static final Comparator<VirtualFile> FILE_COMPARATOR = new Comparator<VirtualFile>() {
         public int compare(final VirtualFile o1, final VirtualFile o2) {
@@ -133,6 +138,14 @@ public class ProjectSettings implements ProjectComponent, PersistentStateCompone
         this.resolveMixins = resolveMixins;
     }
 
+    public int getSaveDelay() {
+        return saveDelay;
+    }
+
+    public void setSaveDelay(int saveDelay) {
+        this.saveDelay = saveDelay;
+    }
+
     @NotNull
     public String getComponentName() {
         return getClass().getName();
@@ -162,6 +175,7 @@ public class ProjectSettings implements ProjectComponent, PersistentStateCompone
         }
         general.setAttribute("autoClear", Boolean.toString(this.autoClear));
         general.setAttribute("autoExpand", Boolean.toString(this.autoExpand));
+        general.setAttribute("saveDelay", Integer.toString(this.saveDelay));
         strategy.setAttribute("useRoutes", Boolean.toString(this.useRoutes));
         strategy.setAttribute("mediaReduce", Boolean.toString(this.mediaReduce));
         strategy.setAttribute("fileReduce", Boolean.toString(this.fileReduce));
@@ -196,6 +210,7 @@ public class ProjectSettings implements ProjectComponent, PersistentStateCompone
         Element general = root.getChild("general");
         this.autoClear = general != null && Boolean.parseBoolean(general.getAttributeValue("autoClear"));
         this.autoExpand = general == null || general.getAttributeValue("autoExpand") == null || Boolean.parseBoolean(general.getAttributeValue("autoExpand"));
+        this.saveDelay = general != null ? parseInt(general.getAttributeValue("saveDelay"), 0) : 0;
         Element strategy = root.getChild("strategy");
         this.fileReduce = strategy != null && Boolean.parseBoolean(strategy.getAttributeValue("fileReduce"));
         this.mediaReduce = strategy != null && Boolean.parseBoolean(strategy.getAttributeValue("mediaReduce"));
@@ -205,6 +220,17 @@ public class ProjectSettings implements ProjectComponent, PersistentStateCompone
         this.useRoutes = strategy != null && Boolean.parseBoolean(strategy.getAttributeValue("useRoutes"));
     }
 
+    private static int parseInt(String value, int defaultValue) {
+        if (value != null) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // use default
+            }
+        }
+        return defaultValue;
+    }
+
     public void projectOpened() {
     }
 
@@ -54,6 +54,10 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
     private JCheckBox checkBoxCurrentDocumentsReduce;
     private JCheckBox checkBoxResolveVariables;
     private JCheckBox checkBoxResolveMixins;
+    private JSpinner spinnerSaveDelay;
+    private JCheckBox checkBoxNioWebServer;
+    private JSpinner spinnerCoalesceWindow;
+    private JSpinner spinnerSearchCacheSize;
     private FileTreeTable routesTable;
     private JScrollPane routesScrollPane;
     private JPanel myPanel;
@@ -78,6 +82,10 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
 
         routesScrollPane.setViewportView(routesTable);
 
+        spinnerSaveDelay.setModel(new SpinnerNumberModel(0, 0, 10000, 100));
+        spinnerCoalesceWindow.setModel(new SpinnerNumberModel(50, 0, 1000, 10));
+        spinnerSearchCacheSize.setModel(new SpinnerNumberModel(500, 1, 100000, 100));
+
         routesTable.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
             public void valueChanged(ListSelectionEvent e) {
                 updateWebRootButton();
@@ -126,6 +134,7 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
 
     public boolean isModified() {
         ProjectSettings state = ProjectSettings.getInstance(myProject);
+        AppMeta appMeta = CssXFireConnector.getInstance().getState();
         return !state.getRoutes().getMappings().equals(routesTable.getValues())
                 || state.isAutoClear() != checkBoxAutoClear.isSelected()
                 || state.isMediaReduce() != checkBoxMediaReduce.isSelected()
@@ -133,7 +142,11 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
                 || state.isUseRoutes() != checkBoxUseRoutes.isSelected()
                 || state.isCurrentDocumentsReduce() != checkBoxCurrentDocumentsReduce.isSelected()
                 || state.isResolveVariables() != checkBoxResolveVariables.isSelected()
-                || state.isResolveMixins() != checkBoxResolveMixins.isSelected();
+                || state.isResolveMixins() != checkBoxResolveMixins.isSelected()
+                || state.getSaveDelay() != getSpinnerValue(spinnerSaveDelay)
+                || appMeta.isNioWebServer() != checkBoxNioWebServer.isSelected()
+                || appMeta.getCoalesceWindow() != getSpinnerValue(spinnerCoalesceWindow)
+                || appMeta.getSearchCacheSize() != getSpinnerValue(spinnerSearchCacheSize);
     }
 
     public void apply() throws ConfigurationException {
@@ -146,12 +159,23 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
         state.setResolveVariables(checkBoxResolveVariables.isSelected());
         state.setResolveMixins(checkBoxResolveMixins.isSelected());
         state.setUseRoutes(checkBoxUseRoutes.isSelected());
+        state.setSaveDelay(getSpinnerValue(spinnerSaveDelay));
 
         // set default values for new projects (legacy)
         //noinspection ConstantConditions
         CssXFireConnector.getInstance().getState().setMediaReduce(checkBoxMediaReduce.isSelected());
         //noinspection ConstantConditions
         CssXFireConnector.getInstance().getState().setSmartReduce(checkBoxFileReduce.isSelected());
+
+        // application settings, shared by all projects
+        AppMeta appMeta = CssXFireConnector.getInstance().getState();
+        appMeta.setNioWebServer(checkBoxNioWebServer.isSelected());
+        appMeta.setCoalesceWindow(getSpinnerValue(spinnerCoalesceWindow));
+        appMeta.setSearchCacheSize(getSpinnerValue(spinnerSearchCacheSize));
+        ChangesCoalescer changesCoalescer = CssXFireConnector.getInstance().getChangesCoalescer();
+        if (changesCoalescer != null) {
+            changesCoalescer.setWindow(appMeta.getCoalesceWindow());
+        }
     }
 
     public void reset() {
@@ -164,6 +188,16 @@ public class ProjectSettingsConfigurable implements SearchableConfigurable, NonD
         checkBoxResolveVariables.setSelected(state.isResolveVariables());
         checkBoxResolveMixins.setSelected(state.isResolveMixins());
         checkBoxUseRoutes.setSelected(state.isUseRoutes());
+        spinnerSaveDelay.setValue(state.getSaveDelay());
+
+        AppMeta appMeta = CssXFireConnector.getInstance().getState();
+        checkBoxNioWebServer.setSelected(appMeta.isNioWebServer());
+        spinnerCoalesceWindow.setValue(appMeta.getCoalesceWindow());
+        spinnerSearchCacheSize.setValue(appMeta.getSearchCacheSize());
+    }
+
+    private static int getSpinnerValue(@NotNull JSpinner spinner) {
+        return ((Number) spinner.getValue()).intValue();
     }
 
     public void disposeUIResources() {
@@ -43,8 +43,20 @@ public class RouteUtils {
     @Nullable
     public static VirtualFile detectLocalFile(@NotNull final Project project, @NotNull final String filePath) {
         final RoutePerFileMappings routes = ProjectSettings.getInstance(project).getRoutes();
+        return detectLocalFile(routes.getMappings(), filePath);
+    }
+
+    /**
+     * Finds the local file for a given route among the given mappings.
+     *
+     * @param mappings the routes, keyed by local file or directory
+     * @param filePath the remote file path
+     * @return the mapped local file, or <tt>null</tt> if no mapping can be detected
+     * @see #detectLocalFile(com.intellij.openapi.project.Project, String)
+     */
+    @Nullable
+    public static VirtualFile detectLocalFile(@NotNull Map<VirtualFile, String> mappings, @NotNull final String filePath) {
         String[] parts = filePath.split("/");
-        Map<VirtualFile, String> mappings = routes.getMappings();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Detect local file, path: " + filePath + " routes: " + mappings);
         }
@@ -16,29 +16,67 @@
 
 package com.github.cssxfire;
 
+import com.github.cssxfire.index.CssMediaIndex;
+import com.github.cssxfire.index.CssSelectorIndex;
+import com.github.cssxfire.index.IndexUtils;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.project.Project;
-import com.intellij.psi.PsiManager;
-import com.intellij.psi.PsiTreeChangeAdapter;
-import com.intellij.psi.PsiTreeChangeEvent;
-import com.intellij.psi.PsiTreeChangeListener;
+import com.intellij.openapi.util.ModificationTracker;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.css.CssMediumList;
+import com.intellij.psi.css.CssSelectorList;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.search.PsiSearchHelper;
-import com.intellij.psi.search.UsageSearchContext;
+import com.intellij.psi.util.PsiTreeUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.lang.ref.SoftReference;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Project search cache.
+ * Project search cache. The searches are looked up in the {@link CssSelectorIndex} and the {@link CssMediaIndex}, and
+ * each cached search remembers its index key and the files its results were found in. Changed stylesheets are
+ * recorded when the PSI changes, and on the next lookup a search is dropped if it has results in any of them, or if
+ * its key is now indexed in any of them. The keys are flattened selectors and canonical media queries which need not
+ * occur as text in the stylesheet, so the changed files are looked up in the indexes rather than searched for the
+ * text. Changes to files which are not stylesheets are ignored. Lookups need the indexes, i.e. must be done in smart
+ * mode.
+ * <p>The cache holds at most {@link AppMeta#getSearchCacheSize()} searches of each kind, evicting the least recently
+ * used one. The searches are softly referenced, so the PSI of their results may be reclaimed under memory pressure,
+ * and a search with any invalid result is dropped on lookup.
  */
 public class SearchProcessorCache implements ProjectComponent {
-    private final Map<String, CssSelectorSearchProcessor> selectorProcessorCache = new ConcurrentHashMap<String, CssSelectorSearchProcessor>();
-    private final Map<String, CssMediaSearchProcessor> mediaProcessorCache = new ConcurrentHashMap<String, CssMediaSearchProcessor>();
+    private final SearchCache<CssSelectorSearchProcessor> selectorProcessorCache = new SearchCache<CssSelectorSearchProcessor>() {
+        @Override
+        protected boolean isValid(@NotNull CssSelectorSearchProcessor processor) {
+            return processor.isValid();
+        }
+    };
+    private final SearchCache<CssMediaSearchProcessor> mediaProcessorCache = new SearchCache<CssMediaSearchProcessor>() {
+        @Override
+        protected boolean isValid(@NotNull CssMediaSearchProcessor processor) {
+            return processor.isValid();
+        }
+    };
+
+    /**
+     * Stylesheets changed since the last lookup, guarded by itself
+     */
+    private final Set<VirtualFile> changedFiles = new HashSet<VirtualFile>();
+
+    /**
+     * Counts the changes to stylesheets, see {@link #getStylesheetModificationTracker()}
+     */
+    private final AtomicLong stylesheetModificationCount = new AtomicLong();
+    private final ModificationTracker stylesheetModificationTracker = new ModificationTracker() {
+        public long getModificationCount() {
+            return stylesheetModificationCount.get();
+        }
+    };
 
     private final GlobalSearchScope searchScope;
-    private final short searchContext = UsageSearchContext.ANY;
     private final Project project;
 
     public SearchProcessorCache(Project project) {
@@ -61,52 +99,188 @@ public class SearchProcessorCache implements ProjectComponent {
         mediaProcessorCache.clear();
     }
 
+    /**
+     * Records that the cached searches may be affected by a change in a file
+     *
+     * @param file the changed (added, removed or modified) file
+     */
+    private void invalidate(@NotNull PsiFile file) {
+        if (CssUtils.isStylesheet(file)) {
+            stylesheetModificationCount.incrementAndGet();
+            synchronized (changedFiles) {
+                changedFiles.add(file.getViewProvider().getVirtualFile());
+            }
+        }
+    }
+
+    /**
+     * Drops the cached searches affected by the stylesheets changed since the last lookup
+     */
+    private void dropChangedSearches() {
+        Set<VirtualFile> files;
+        synchronized (changedFiles) {
+            if (changedFiles.isEmpty()) {
+                return;
+            }
+            files = new HashSet<VirtualFile>(changedFiles);
+            changedFiles.clear();
+        }
+        selectorProcessorCache.drop(files, IndexUtils.getKeys(CssSelectorIndex.NAME, files, project));
+        mediaProcessorCache.drop(files, IndexUtils.getKeys(CssMediaIndex.NAME, files, project));
+    }
+
+    private void onPsiChange(@NotNull PsiTreeChangeEvent event) {
+        PsiFile file = event.getFile();
+        if (file != null) {
+            invalidate(file);
+            return;
+        }
+        // No single file changed - a file or directory was added, removed, moved or renamed, or e.g. the roots changed
+        PsiElement element = event.getChild() != null ? event.getChild() : event.getElement();
+        if (element instanceof PsiFile && event.getOldParent() == null) {
+            invalidate((PsiFile) element);
+        } else if (element instanceof PsiFile || element instanceof PsiDirectory
+                || PsiTreeChangeEvent.PROP_ROOTS.equals(event.getPropertyName())
+                || PsiTreeChangeEvent.PROP_FILE_TYPES.equals(event.getPropertyName())) {
+            // moved, or a whole directory changed - may have left or entered the project scope
+            stylesheetModificationCount.incrementAndGet();
+            clearCaches();
+        }
+    }
+
     /**
      * Gets a new or cached search processor for given selector. In either case the returned processor has
-     * been processed with candidates in the project.
+     * been processed with candidates in the project. Must be invoked in a read action in smart mode.
      *
      * @param selector the selector to search for
      * @return a {@link com.github.cssxfire.CssSelectorSearchProcessor} instance
      */
     @NotNull
     public CssSelectorSearchProcessor getSelectorSearchProcessor(@NotNull String selector) {
-        CssSelectorSearchProcessor selectorProcessor = selectorProcessorCache.get(selector);
-        if (selectorProcessor != null) {
-            return selectorProcessor;
+        dropChangedSearches();
+        CssSelectorSearchProcessor cachedProcessor = selectorProcessorCache.get(selector);
+        if (cachedProcessor != null) {
+            return cachedProcessor;
         }
 
-        selectorProcessor = new CssSelectorSearchProcessor(selector);
-        PsiSearchHelper helper = CssUtils.getPsiSearchHelper(project);
-        helper.processElementsWithWord(selectorProcessor, searchScope, selectorProcessor.getSearchWord(), searchContext, true);
+        CssSelectorSearchProcessor selectorProcessor = new CssSelectorSearchProcessor(selector);
+        String key = CssSelectorIndex.createKey(selectorProcessor.getSelector());
+        Set<VirtualFile> files = searchSelectorIndex(selectorProcessor, key);
 
-        selectorProcessorCache.put(selector, selectorProcessor);
+        selectorProcessorCache.put(selector, new CachedSearch<CssSelectorSearchProcessor>(selectorProcessor, key, files));
 
         return selectorProcessor;
     }
 
+    /**
+     * Looks up the rules matching the selector of a processor in the {@link CssSelectorIndex}
+     *
+     * @param selectorProcessor the processor to add the matching selector lists to
+     * @param key               the index key of the selector
+     * @return the files with matching rules
+     */
+    @NotNull
+    private Set<VirtualFile> searchSelectorIndex(@NotNull CssSelectorSearchProcessor selectorProcessor, @NotNull String key) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        Map<VirtualFile, List<Integer>> offsets = IndexUtils.getOffsets(CssSelectorIndex.NAME, key, searchScope);
+        for (Map.Entry<VirtualFile, List<Integer>> entry : offsets.entrySet()) {
+            PsiFile psiFile = psiManager.findFile(entry.getKey());
+            if (psiFile != null) {
+                for (Integer offset : entry.getValue()) {
+                    CssSelectorList selectorList = PsiTreeUtil.getParentOfType(psiFile.findElementAt(offset), CssSelectorList.class, false);
+                    if (selectorList != null) {
+                        selectorProcessor.addResult(selectorList);
+                    }
+                }
+            }
+        }
+        return offsets.keySet();
+    }
+
+    /**
+     * Looks up the medium lists matching the media query of a processor in the {@link CssMediaIndex}
+     *
+     * @param mediaProcessor the processor to add the matching medium lists to
+     * @return the files with matching medium lists
+     */
+    @NotNull
+    private Set<VirtualFile> searchMediaIndex(@NotNull CssMediaSearchProcessor mediaProcessor) {
+        PsiManager psiManager = PsiManager.getInstance(project);
+        Map<VirtualFile, List<Integer>> offsets = IndexUtils.getOffsets(CssMediaIndex.NAME, mediaProcessor.getKey(), searchScope);
+        for (Map.Entry<VirtualFile, List<Integer>> entry : offsets.entrySet()) {
+            PsiFile psiFile = psiManager.findFile(entry.getKey());
+            if (psiFile != null) {
+                for (Integer offset : entry.getValue()) {
+                    CssMediumList mediumList = PsiTreeUtil.getParentOfType(psiFile.findElementAt(offset), CssMediumList.class, false);
+                    if (mediumList != null) {
+                        mediaProcessor.addResult(mediumList);
+                    }
+                }
+            }
+        }
+        return offsets.keySet();
+    }
+
     /**
      * Gets a new or cached search processor for given media query. In either case the returned processor has
-     * been processed with candidates in the project.
+     * been processed with candidates in the project. Must be invoked in a read action in smart mode.
      *
      * @param media the media query to search for
      * @return a {@link com.github.cssxfire.CssMediaSearchProcessor} instance
      */
     @NotNull
     public CssMediaSearchProcessor getMediaSearchProcessor(@NotNull String media) {
-        CssMediaSearchProcessor mediaProcessor = mediaProcessorCache.get(media);
-        if (mediaProcessor != null) {
-            return mediaProcessor;
+        dropChangedSearches();
+        CssMediaSearchProcessor cachedProcessor = mediaProcessorCache.get(media);
+        if (cachedProcessor != null) {
+            return cachedProcessor;
         }
 
-        mediaProcessor = new CssMediaSearchProcessor(media);
-        PsiSearchHelper helper = CssUtils.getPsiSearchHelper(project);
-        helper.processElementsWithWord(mediaProcessor, searchScope, mediaProcessor.getSearchWord(), searchContext, true);
+        CssMediaSearchProcessor mediaProcessor = new CssMediaSearchProcessor(media);
+        Set<VirtualFile> files = searchMediaIndex(mediaProcessor);
 
-        mediaProcessorCache.put(media, mediaProcessor);
+        mediaProcessorCache.put(media, new CachedSearch<CssMediaSearchProcessor>(mediaProcessor, mediaProcessor.getKey(), files));
 
         return mediaProcessor;
     }
 
+    /**
+     * Gets a tracker counting the changes to stylesheets in the project, including files and directories being added,
+     * removed or moved. Changes to other files are not counted.
+     *
+     * @return the stylesheet modification tracker
+     */
+    @NotNull
+    public ModificationTracker getStylesheetModificationTracker() {
+        return stylesheetModificationTracker;
+    }
+
+    /**
+     * @return the number of lookups answered from the cache
+     */
+    public long getHitCount() {
+        return selectorProcessorCache.getHitCount() + mediaProcessorCache.getHitCount();
+    }
+
+    /**
+     * @return the number of lookups which required a search, including those for searches reclaimed or invalid
+     */
+    public long getMissCount() {
+        return selectorProcessorCache.getMissCount() + mediaProcessorCache.getMissCount();
+    }
+
+    /**
+     * @return the number of searches evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return selectorProcessorCache.getEvictionCount() + mediaProcessorCache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "selectors: " + selectorProcessorCache + ", media: " + mediaProcessorCache;
+    }
+
     public void projectOpened() {
         // Attach cache invalidator
         PsiManager.getInstance(project).addPsiTreeChangeListener(myCacheInvalidator);
@@ -132,37 +306,139 @@ public class SearchProcessorCache implements ProjectComponent {
     }
 
     /**
-     * Clears caches on any PSI change
+     * Invalidates affected searches on PSI changes
      */
     private PsiTreeChangeListener myCacheInvalidator = new PsiTreeChangeAdapter() {
         @Override
         public void childAdded(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
 
         @Override
         public void childRemoved(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
 
         @Override
         public void childReplaced(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
 
         @Override
         public void childMoved(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
 
         @Override
         public void childrenChanged(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
 
         @Override
         public void propertyChanged(PsiTreeChangeEvent event) {
-            SearchProcessorCache.this.clearCaches();
+            SearchProcessorCache.this.onPsiChange(event);
         }
     };
+
+    /**
+     * A size bounded, least recently used map of searches, keyed by the text searched for
+     *
+     * @param <T> the type of search processor
+     */
+    private abstract static class SearchCache<T> {
+        private final Map<String, CachedSearch<T>> map = new LinkedHashMap<String, CachedSearch<T>>(16, 0.75f, true);
+        private long hitCount = 0;
+        private long missCount = 0;
+        private long evictionCount = 0;
+
+        /**
+         * Check if the results of a cached search may still be used
+         *
+         * @param processor the search
+         * @return <tt>true</tt> if all results are valid
+         */
+        protected abstract boolean isValid(@NotNull T processor);
+
+        @Nullable
+        public synchronized T get(@NotNull String key) {
+            CachedSearch<T> cachedSearch = map.get(key);
+            T processor = cachedSearch != null ? cachedSearch.processor.get() : null;
+            if (processor == null || !isValid(processor)) {
+                if (cachedSearch != null) {
+                    map.remove(key);
+                }
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return processor;
+        }
+
+        public synchronized void put(@NotNull String key, @NotNull CachedSearch<T> cachedSearch) {
+            map.put(key, cachedSearch);
+            int maxSize = Math.max(1, CssXFireConnector.getInstance().getState().getSearchCacheSize());
+            for (Iterator<CachedSearch<T>> iterator = map.values().iterator(); map.size() > maxSize && iterator.hasNext(); ) {
+                // iteration order is least recently used first
+                iterator.next();
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+
+        /**
+         * Drops the searches with results in any of the given files, or with any of the given index keys
+         *
+         * @param files the changed files
+         * @param keys  the index keys of the changed files
+         */
+        public synchronized void drop(@NotNull Set<VirtualFile> files, @NotNull Set<String> keys) {
+            for (Iterator<CachedSearch<T>> iterator = map.values().iterator(); iterator.hasNext(); ) {
+                CachedSearch<T> cachedSearch = iterator.next();
+                if (keys.contains(cachedSearch.key) || !Collections.disjoint(cachedSearch.files, files)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        public synchronized long getHitCount() {
+            return hitCount;
+        }
+
+        public synchronized long getMissCount() {
+            return missCount;
+        }
+
+        public synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return "size=" + map.size() + ", hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount;
+        }
+    }
+
+    /**
+     * A softly referenced cached search, its index key and the files its results were found in
+     *
+     * @param <T> the type of search processor
+     */
+    private static class CachedSearch<T> {
+        @NotNull
+        private final SoftReference<T> processor;
+        @NotNull
+        private final String key;
+        @NotNull
+        private final Set<VirtualFile> files;
+
+        private CachedSearch(@NotNull T processor, @NotNull String key, @NotNull Set<VirtualFile> files) {
+            this.processor = new SoftReference<T>(processor);
+            this.key = key;
+            this.files = files;
+        }
+    }
 }
@@ -16,7 +16,7 @@
 
 package com.github.cssxfire.filter;
 
-import com.github.cssxfire.StringUtils;
+import com.github.cssxfire.index.CssMediaIndex;
 import com.github.cssxfire.tree.CssDeclarationPath;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
@@ -37,9 +37,12 @@ public class MediaReduceStrategy implements ReduceStrategy<CssDeclarationPath> {
 
     @NotNull
     private String media;
+    @NotNull
+    private String key;
 
     public MediaReduceStrategy(@NotNull String media) {
         this.media = media;
+        this.key = CssMediaIndex.createKey(media);
     }
 
     public void reduce(@NotNull Collection<CssDeclarationPath> candidates) {
@@ -54,7 +57,7 @@ public class MediaReduceStrategy implements ReduceStrategy<CssDeclarationPath> {
         List<CssDeclarationPath> matches = new ArrayList<CssDeclarationPath>();
         for (CssDeclarationPath candidate : candidates) {
             String candidateMedia = candidate.getSelectorNode().getMedia();
-            if (StringUtils.equalsNormalizeWhitespace(media, candidateMedia)) {
+            if (key.equals(CssMediaIndex.createKey(candidateMedia))) {
                 // media query matches candidate selector
                 matches.add(candidate);
             }
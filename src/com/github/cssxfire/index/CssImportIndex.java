@@ -0,0 +1,192 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.index;
+
+import com.github.cssxfire.CssUtils;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.css.CssImport;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * <p>Maps the name of every file imported by a Less/Sass stylesheet to the offsets of the importing
+ * <tt>@import</tt> rules, i.e. the reverse edges of the import graph. Keys are created with {@link #createKey(String)}
+ * so that <tt>@import "mixins"</tt> and <tt>@import "_mixins.scss"</tt> both are found when looking for importers
+ * of <tt>_mixins.scss</tt>. The forward edges are the imports of the file itself and need no index.
+ * <p>Stylesheets are re-indexed by the platform whenever they change.
+ */
+public class CssImportIndex extends FileBasedIndexExtension<String, List<Integer>> {
+    public static final ID<String, List<Integer>> NAME = ID.create("com.github.cssxfire.CssImportIndex");
+
+    private static final int VERSION = 1;
+
+    private final DataIndexer<String, List<Integer>, FileContent> indexer = new DataIndexer<String, List<Integer>, FileContent>() {
+        @NotNull
+        public Map<String, List<Integer>> map(FileContent inputData) {
+            Map<String, List<Integer>> map = new HashMap<String, List<Integer>>();
+            PsiFile file = inputData.getPsiFile();
+            for (CssImport cssImport : PsiTreeUtil.findChildrenOfType(file, CssImport.class)) {
+                for (String uri : cssImport.getUriStrings()) {
+                    if (uri == null) {
+                        continue;
+                    }
+                    String key = createKey(uri);
+                    if (key.length() == 0) {
+                        continue;
+                    }
+                    List<Integer> offsets = map.get(key);
+                    if (offsets == null) {
+                        offsets = new ArrayList<Integer>();
+                        map.put(key, offsets);
+                    }
+                    Integer offset = cssImport.getTextRange().getStartOffset();
+                    if (!offsets.contains(offset)) {
+                        offsets.add(offset);
+                    }
+                }
+            }
+            return map;
+        }
+    };
+
+    private final DataExternalizer<List<Integer>> valueExternalizer = new DataExternalizer<List<Integer>>() {
+        public void save(DataOutput out, List<Integer> offsets) throws IOException {
+            out.writeInt(offsets.size());
+            for (Integer offset : offsets) {
+                out.writeInt(offset);
+            }
+        }
+
+        public List<Integer> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<Integer> offsets = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                offsets.add(in.readInt());
+            }
+            return offsets;
+        }
+    };
+
+    private final FileBasedIndex.InputFilter inputFilter = new FileBasedIndex.InputFilter() {
+        public boolean acceptInput(VirtualFile file) {
+            return CssUtils.isStylesheetFileType(file.getFileType());
+        }
+    };
+
+    /**
+     * Creates the index key for an import uri or a file name. The key is the last path segment without extension and
+     * without the leading underscore of Sass partials.
+     *
+     * @param uri the uri of an import, or the name of an imported file
+     * @return the key
+     */
+    @NotNull
+    public static String createKey(@NotNull String uri) {
+        String name = uri.trim();
+        int slash = name.lastIndexOf('/');
+        if (slash != -1) {
+            name = name.substring(slash + 1);
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        if (name.startsWith("_")) {
+            name = name.substring(1);
+        }
+        return name;
+    }
+
+    /**
+     * Processes the <tt>@import</tt> rules in the given scope that import the given file. The offsets are collected from
+     * the index first, and the PSI is only touched once the index query has returned, so the processor may query the
+     * index again.
+     *
+     * @param file      the imported file
+     * @param scope     the scope of the importing files
+     * @param processor the processor of the importing rules
+     * @return <tt>false</tt> if the processor returned <tt>false</tt> for any import
+     */
+    public static boolean processImportsOf(@NotNull final PsiFile file, @NotNull GlobalSearchScope scope, @NotNull final Processor<CssImport> processor) {
+        PsiManager psiManager = file.getManager();
+        for (Map.Entry<VirtualFile, List<Integer>> entry : IndexUtils.getOffsets(NAME, createKey(file.getName()), scope).entrySet()) {
+            PsiFile importingFile = psiManager.findFile(entry.getKey());
+            if (importingFile == null) {
+                continue;
+            }
+            for (Integer offset : entry.getValue()) {
+                CssImport cssImport = PsiTreeUtil.getParentOfType(importingFile.findElementAt(offset), CssImport.class, false);
+                if (cssImport != null && Arrays.asList(cssImport.resolve()).contains(file)) {
+                    if (!processor.process(cssImport)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public ID<String, List<Integer>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<Integer>, FileContent> getIndexer() {
+        return indexer;
+    }
+
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return new EnumeratorStringDescriptor();
+    }
+
+    @Override
+    public DataExternalizer<List<Integer>> getValueExternalizer() {
+        return valueExternalizer;
+    }
+
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return inputFilter;
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.index;
+
+import com.github.cssxfire.CssUtils;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.css.CssMediumList;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Maps the media query of every <tt>@media</tt> rule in the project stylesheets to the offsets of its medium lists.
+ * Keys are created with {@link #createKey(String)}, so that whitespace, case, the order of the comma separated queries
+ * and of the features within a query, and the notation of numbers does not matter.
+ * <p>Stylesheets are re-indexed by the platform whenever they change.
+ */
+public class CssMediaIndex extends FileBasedIndexExtension<String, List<Integer>> {
+    public static final ID<String, List<Integer>> NAME = ID.create("com.github.cssxfire.CssMediaIndex");
+
+    private static final int VERSION = 1;
+
+    private static final Pattern NUMBER = Pattern.compile("(\\d*\\.\\d+|\\d+)([a-z%]*)");
+
+    private final DataIndexer<String, List<Integer>, FileContent> indexer = new DataIndexer<String, List<Integer>, FileContent>() {
+        @NotNull
+        public Map<String, List<Integer>> map(FileContent inputData) {
+            Map<String, List<Integer>> map = new HashMap<String, List<Integer>>();
+            PsiFile file = inputData.getPsiFile();
+            for (CssMediumList mediumList : PsiTreeUtil.findChildrenOfType(file, CssMediumList.class)) {
+                if (CssUtils.findMediumList(mediumList) != mediumList) {
+                    // not the medium list of a @media rule, e.g. of an @import
+                    continue;
+                }
+                String key = createKey(mediumList.getText());
+                if (key.length() == 0) {
+                    continue;
+                }
+                List<Integer> offsets = map.get(key);
+                if (offsets == null) {
+                    offsets = new ArrayList<Integer>();
+                    map.put(key, offsets);
+                }
+                offsets.add(mediumList.getTextRange().getStartOffset());
+            }
+            return map;
+        }
+    };
+
+    private final DataExternalizer<List<Integer>> valueExternalizer = new DataExternalizer<List<Integer>>() {
+        public void save(DataOutput out, List<Integer> offsets) throws IOException {
+            out.writeInt(offsets.size());
+            for (Integer offset : offsets) {
+                out.writeInt(offset);
+            }
+        }
+
+        public List<Integer> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<Integer> offsets = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                offsets.add(in.readInt());
+            }
+            return offsets;
+        }
+    };
+
+    private final FileBasedIndex.InputFilter inputFilter = new FileBasedIndex.InputFilter() {
+        public boolean acceptInput(VirtualFile file) {
+            return CssUtils.isStylesheetFileType(file.getFileType());
+        }
+    };
+
+    /**
+     * Creates the index key for a media query list, e.g. <tt>screen and (max-width: 600px), print</tt>. The key is the
+     * lower case queries in sorted order, each with its features sorted and without whitespace, and with numbers in
+     * plain notation. A zero length has no unit and the media type <tt>all</tt> is dropped from queries with features.
+     *
+     * @param media the media query list, as reported by the browser or as written in a stylesheet
+     * @return the key
+     */
+    @NotNull
+    public static String createKey(@NotNull String media) {
+        SortedSet<String> queries = new TreeSet<String>();
+        for (String query : media.toLowerCase(Locale.ENGLISH).split(",")) {
+            String key = createQueryKey(query);
+            if (key.length() > 0) {
+                queries.add(key);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (String query : queries) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(query);
+        }
+        return key.toString();
+    }
+
+    @NotNull
+    private static String createQueryKey(@NotNull String query) {
+        StringBuilder prefix = new StringBuilder();
+        SortedSet<String> features = new TreeSet<String>();
+        int length = query.length();
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                int end = query.indexOf(')', i);
+                if (end == -1) {
+                    end = length;
+                }
+                String feature = createFeatureKey(query.substring(i + 1, end));
+                if (feature.length() > 0) {
+                    features.add(feature);
+                }
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < length && query.charAt(end) != '(' && !Character.isWhitespace(query.charAt(end))) {
+                    end++;
+                }
+                String word = query.substring(i, end);
+                if (!"and".equals(word)) {
+                    if (prefix.length() > 0) {
+                        prefix.append(' ');
+                    }
+                    prefix.append(word);
+                }
+                i = end;
+            }
+        }
+        if (!features.isEmpty() && "all".equals(prefix.toString())) {
+            prefix.setLength(0);
+        }
+        StringBuilder key = new StringBuilder(prefix);
+        for (String feature : features) {
+            if (key.length() > 0) {
+                key.append(" and ");
+            }
+            key.append('(').append(feature).append(')');
+        }
+        return key.toString();
+    }
+
+    @NotNull
+    private static String createFeatureKey(@NotNull String feature) {
+        StringBuilder withoutWhitespace = new StringBuilder(feature.length());
+        for (int i = 0; i < feature.length(); i++) {
+            char c = feature.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                withoutWhitespace.append(c);
+            }
+        }
+        StringBuffer key = new StringBuffer(withoutWhitespace.length());
+        Matcher matcher = NUMBER.matcher(withoutWhitespace);
+        while (matcher.find()) {
+            if (matcher.start() > 0 && Character.isLetter(withoutWhitespace.charAt(matcher.start() - 1))) {
+                // digit in a name, e.g. a vendor prefix
+                continue;
+            }
+            BigDecimal number = new BigDecimal(matcher.group(1));
+            String replacement = number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString() + matcher.group(2);
+            matcher.appendReplacement(key, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(key);
+        return key.toString();
+    }
+
+    @NotNull
+    @Override
+    public ID<String, List<Integer>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<Integer>, FileContent> getIndexer() {
+        return indexer;
+    }
+
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return new EnumeratorStringDescriptor();
+    }
+
+    @Override
+    public DataExternalizer<List<Integer>> getValueExternalizer() {
+        return valueExternalizer;
+    }
+
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return inputFilter;
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+}
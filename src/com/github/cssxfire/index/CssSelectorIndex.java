@@ -0,0 +1,217 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.index;
+
+import com.github.cssxfire.CssUtils;
+import com.github.cssxfire.StringUtils;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.css.CssRuleset;
+import com.intellij.psi.css.CssSelectorList;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.indexing.*;
+import com.intellij.util.io.DataExternalizer;
+import com.intellij.util.io.EnumeratorStringDescriptor;
+import com.intellij.util.io.KeyDescriptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * <p>Maps the full selector of every rule in the project stylesheets to the offsets of its selector lists. Nested
+ * Less/Sass rules are indexed by their flattened selector, i.e. the selector as seen by the browser, with any
+ * <tt>&amp;</tt> replaced by the parent selector. Keys are created with {@link #createKey(String)}, so that
+ * whitespace and the order of the comma separated selectors does not matter.
+ * <p>Stylesheets are re-indexed by the platform whenever they change.
+ */
+public class CssSelectorIndex extends FileBasedIndexExtension<String, List<Integer>> {
+    public static final ID<String, List<Integer>> NAME = ID.create("com.github.cssxfire.CssSelectorIndex");
+
+    private static final int VERSION = 1;
+
+    private final DataIndexer<String, List<Integer>, FileContent> indexer = new DataIndexer<String, List<Integer>, FileContent>() {
+        @NotNull
+        public Map<String, List<Integer>> map(FileContent inputData) {
+            final Map<String, List<Integer>> map = new HashMap<String, List<Integer>>();
+            PsiFile file = inputData.getPsiFile();
+            Map<CssRuleset, List<String>> flattened = new HashMap<CssRuleset, List<String>>();
+            for (CssRuleset ruleset : PsiTreeUtil.findChildrenOfType(file, CssRuleset.class)) {
+                CssSelectorList selectorList = ruleset.getSelectorList();
+                if (selectorList == null) {
+                    continue;
+                }
+                String key = createKey(getFlattenedSelectors(ruleset, flattened));
+                if (key.length() == 0) {
+                    continue;
+                }
+                List<Integer> offsets = map.get(key);
+                if (offsets == null) {
+                    offsets = new ArrayList<Integer>();
+                    map.put(key, offsets);
+                }
+                offsets.add(selectorList.getTextRange().getStartOffset());
+            }
+            return map;
+        }
+    };
+
+    private final DataExternalizer<List<Integer>> valueExternalizer = new DataExternalizer<List<Integer>>() {
+        public void save(DataOutput out, List<Integer> offsets) throws IOException {
+            out.writeInt(offsets.size());
+            for (Integer offset : offsets) {
+                out.writeInt(offset);
+            }
+        }
+
+        public List<Integer> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<Integer> offsets = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                offsets.add(in.readInt());
+            }
+            return offsets;
+        }
+    };
+
+    private final FileBasedIndex.InputFilter inputFilter = new FileBasedIndex.InputFilter() {
+        public boolean acceptInput(VirtualFile file) {
+            return CssUtils.isStylesheetFileType(file.getFileType());
+        }
+    };
+
+    /**
+     * Creates the index key for a selector list
+     *
+     * @param selectorList the comma separated selectors, as reported by the browser
+     * @return the key
+     */
+    @NotNull
+    public static String createKey(@NotNull String selectorList) {
+        return createKey(Arrays.asList(selectorList.split(",")));
+    }
+
+    @NotNull
+    private static String createKey(@NotNull Collection<String> selectors) {
+        SortedSet<String> normalized = new TreeSet<String>();
+        for (String selector : selectors) {
+            selector = StringUtils.normalizeWhitespace(selector);
+            if (selector.length() > 0) {
+                normalized.add(selector);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for (String selector : normalized) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(selector);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Expands the selectors of a (possibly nested) rule the way the Less and Sass compilers do
+     *
+     * @param ruleset   the rule
+     * @param flattened the rules already expanded
+     * @return the selectors of the rule as seen by the browser
+     */
+    @NotNull
+    private static List<String> getFlattenedSelectors(@NotNull CssRuleset ruleset, @NotNull Map<CssRuleset, List<String>> flattened) {
+        List<String> selectors = flattened.get(ruleset);
+        if (selectors != null) {
+            return selectors;
+        }
+        selectors = new ArrayList<String>();
+        CssSelectorList selectorList = ruleset.getSelectorList();
+        if (selectorList != null) {
+            List<String> ownSelectors = Arrays.asList(StringUtils.normalizeWhitespace(selectorList.getText()).split(","));
+            CssRuleset parentRuleset = getParentRuleset(ruleset);
+            List<String> parentSelectors = parentRuleset != null ? getFlattenedSelectors(parentRuleset, flattened) : Collections.<String>emptyList();
+            if (parentSelectors.isEmpty()) {
+                for (String selector : ownSelectors) {
+                    selectors.add(selector.trim());
+                }
+            } else {
+                for (String parentSelector : parentSelectors) {
+                    for (String selector : ownSelectors) {
+                        selector = selector.trim();
+                        selectors.add(selector.indexOf('&') != -1
+                                ? selector.replace("&", parentSelector)
+                                : parentSelector + " " + selector);
+                    }
+                }
+            }
+        }
+        flattened.put(ruleset, selectors);
+        return selectors;
+    }
+
+    @Nullable
+    private static CssRuleset getParentRuleset(@NotNull CssRuleset ruleset) {
+        PsiElement parent = ruleset.getParent();
+        while (parent != null && !(parent instanceof PsiFile)) {
+            if (parent instanceof CssRuleset) {
+                return (CssRuleset) parent;
+            }
+            parent = parent.getParent();
+        }
+        return null;
+    }
+
+    @NotNull
+    @Override
+    public ID<String, List<Integer>> getName() {
+        return NAME;
+    }
+
+    @NotNull
+    @Override
+    public DataIndexer<String, List<Integer>, FileContent> getIndexer() {
+        return indexer;
+    }
+
+    @Override
+    public KeyDescriptor<String> getKeyDescriptor() {
+        return new EnumeratorStringDescriptor();
+    }
+
+    @Override
+    public DataExternalizer<List<Integer>> getValueExternalizer() {
+        return valueExternalizer;
+    }
+
+    @Override
+    public FileBasedIndex.InputFilter getInputFilter() {
+        return inputFilter;
+    }
+
+    @Override
+    public boolean dependsOnFileContent() {
+        return true;
+    }
+
+    @Override
+    public int getVersion() {
+        return VERSION;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.index;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.indexing.FileBasedIndex;
+import com.intellij.util.indexing.ID;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Helpers for querying the plugin indexes
+ */
+public class IndexUtils {
+    /**
+     * Collects the offsets stored for a key in an index of offsets, without touching the PSI while the index is locked
+     *
+     * @param indexId the index
+     * @param key     the key
+     * @param scope   the scope of the files
+     * @return the offsets per file, in index order
+     */
+    @NotNull
+    public static Map<VirtualFile, List<Integer>> getOffsets(@NotNull ID<String, List<Integer>> indexId, @NotNull String key, @NotNull GlobalSearchScope scope) {
+        final Map<VirtualFile, List<Integer>> offsets = new LinkedHashMap<VirtualFile, List<Integer>>();
+        FileBasedIndex.getInstance().processValues(indexId, key, null, new FileBasedIndex.ValueProcessor<List<Integer>>() {
+            public boolean process(VirtualFile file, List<Integer> value) {
+                List<Integer> fileOffsets = offsets.get(file);
+                if (fileOffsets == null) {
+                    fileOffsets = new ArrayList<Integer>();
+                    offsets.put(file, fileOffsets);
+                }
+                fileOffsets.addAll(value);
+                return true;
+            }
+        }, scope);
+        return offsets;
+    }
+
+    /**
+     * Collects the keys an index holds for some files
+     *
+     * @param indexId the index
+     * @param files   the files, invalid (deleted) files are skipped
+     * @param project the project
+     * @return the keys of all given files
+     */
+    @NotNull
+    public static Set<String> getKeys(@NotNull ID<String, List<Integer>> indexId, @NotNull Collection<VirtualFile> files, @NotNull Project project) {
+        Set<String> keys = new HashSet<String>();
+        for (VirtualFile file : files) {
+            if (file.isValid()) {
+                keys.addAll(FileBasedIndex.getInstance().getFileData(indexId, file, project).keySet());
+            }
+        }
+        return keys;
+    }
+}
@@ -16,23 +16,25 @@
 
 package com.github.cssxfire.resolve;
 
+import com.intellij.openapi.extensions.Extensions;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileTypes.PlainTextFileType;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Constructor;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
+ * Looks up the {@link CssResolveProcessorFactory} registered for the file type of an element.
+ * <br><br>
  * Created by IntelliJ IDEA.
  * User: Ronnie
  */
 public class CssPluginsFacade {
-    private static final FileType LESS_FILE_TYPE = FileTypeManager.getInstance().getStdFileType("LESS");
-    private static final FileType SASS_FILE_TYPE = FileTypeManager.getInstance().getStdFileType("SASS");
-    private static final FileType SCSS_FILE_TYPE = FileTypeManager.getInstance().getStdFileType("SCSS");
     private static final CssResolveProcessor NOP_PROCESSOR = new CssResolveProcessor(null) {
         @Override
         public boolean executeInternal(@NotNull PsiElement element) {
@@ -40,45 +42,49 @@ public class CssPluginsFacade {
         }
     };
 
+    private static volatile Map<FileType, CssResolveProcessorFactory> factories;
+
     @NotNull
     public static CssResolveProcessor getVariableProcessor(@NotNull PsiElement element, String name) {
-        return createResolveProcessor(element, name, "Variable");
+        CssResolveProcessorFactory factory = getFactory(element);
+        return factory != null ? factory.createVariableProcessor(name) : NOP_PROCESSOR;
     }
     
     @NotNull
     public static CssResolveProcessor getMixinProcessor(@NotNull PsiElement element, String name) {
-        return createResolveProcessor(element, name, "Mixin");
+        CssResolveProcessorFactory factory = getFactory(element);
+        return factory != null ? factory.createMixinProcessor(name) : NOP_PROCESSOR;
     }
     
-    @NotNull
-    private static CssResolveProcessor createResolveProcessor(@NotNull PsiElement element, String name, String type) {
+    @Nullable
+    private static CssResolveProcessorFactory getFactory(@NotNull PsiElement element) {
         PsiFile file = element.getContainingFile();
         if (file == null) {
-            return NOP_PROCESSOR;
+            return null;
         }
         
         FileType fileType = file.getFileType();
         if (fileType == PlainTextFileType.INSTANCE) {
-            return NOP_PROCESSOR;
+            return null;
         }
 
-        String prefix = null;
-        if (fileType == LESS_FILE_TYPE) {
-            prefix = "Less";
-        } else if (fileType == SCSS_FILE_TYPE) {
-            prefix = "Scss";
-        }
+        return getFactories().get(fileType);
+    }
 
-        if (prefix != null) {
-            try {
-                Class<? extends CssResolveProcessor> clazz = (Class<? extends CssResolveProcessor>) Class.forName(CssPluginsFacade.class.getPackage().getName() + "." + prefix + type + "Processor");
-                Constructor<? extends CssResolveProcessor> constructor = clazz.getConstructor(String.class);
-                return constructor.newInstance(name);
-            } catch (Exception e) {
-                e.printStackTrace();
+    @NotNull
+    private static Map<FileType, CssResolveProcessorFactory> getFactories() {
+        Map<FileType, CssResolveProcessorFactory> result = factories;
+        if (result == null) {
+            result = new HashMap<FileType, CssResolveProcessorFactory>();
+            FileTypeManager fileTypeManager = FileTypeManager.getInstance();
+            for (CssResolveProcessorFactory factory : Extensions.getExtensions(CssResolveProcessorFactory.EP_NAME)) {
+                FileType fileType = fileTypeManager.getStdFileType(factory.getFileTypeName());
+                if (fileType != PlainTextFileType.INSTANCE && !result.containsKey(fileType)) {
+                    result.put(fileType, factory);
+                }
             }
+            factories = result;
         }
-
-        return NOP_PROCESSOR;
+        return result;
     }
 }
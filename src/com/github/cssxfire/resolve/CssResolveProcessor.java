@@ -50,7 +50,7 @@ public abstract class CssResolveProcessor implements PsiElementProcessor {
     }
 
     @Nullable
-    public synchronized CssImport popImport() {
+    public CssImport popImport() {
         if (imports.isEmpty()) {
             return null;
         }
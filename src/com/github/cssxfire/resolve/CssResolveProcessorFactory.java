@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.resolve;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Creates the processors resolving variables and mixins in stylesheets of one file type, e.g. Less or SCSS.
+ * Implementations are registered with the <tt>com.github.cssxfire.resolveProcessorFactory</tt> extension point,
+ * preferably in a config file of an optional plugin dependency so that they are only loaded if the plugin providing
+ * the file type is active.
+ */
+public interface CssResolveProcessorFactory {
+    ExtensionPointName<CssResolveProcessorFactory> EP_NAME = ExtensionPointName.create("com.github.cssxfire.resolveProcessorFactory");
+
+    /**
+     * @return the name of the file type handled by this factory, as known to the {@link com.intellij.openapi.fileTypes.FileTypeManager}
+     */
+    @NotNull
+    String getFileTypeName();
+
+    @NotNull
+    CssResolveProcessor createVariableProcessor(String name);
+
+    @NotNull
+    CssResolveProcessor createMixinProcessor(String name);
+}
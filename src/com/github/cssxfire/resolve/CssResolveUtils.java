@@ -17,7 +17,9 @@
 package com.github.cssxfire.resolve;
 
 import com.github.cssxfire.CssUtils;
+import com.github.cssxfire.index.CssImportIndex;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.UserDataHolderEx;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiErrorElement;
@@ -25,15 +27,18 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.ResolveState;
 import com.intellij.psi.css.CssImport;
 import com.intellij.psi.search.GlobalSearchScope;
-import com.intellij.psi.search.SearchScope;
-import com.intellij.psi.search.TextOccurenceProcessor;
-import com.intellij.psi.search.UsageSearchContext;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
@@ -52,6 +57,8 @@ import java.util.HashSet;
  */
 public class CssResolveUtils {
     private static final Key<Collection<String>> PROCESSED_PATHS = new Key<Collection<String>>("PROCESSED_PATHS");
+    private static final Key<Map<PsiFile, Long>> VISITED_FILES = new Key<Map<PsiFile, Long>>("VISITED_FILES");
+    private static final Key<ConcurrentMap<String, CachedResolve>> RESOLVE_CACHE = new Key<ConcurrentMap<String, CachedResolve>>("RESOLVE_CACHE");
 
     /**
      * Checks if the PSI tree in given root contains a PsiErrorElement.
@@ -67,20 +74,96 @@ public class CssResolveUtils {
 
     @Nullable
     public static PsiElement resolveVariable(@NotNull PsiElement base, @NotNull String name) {
-        CssResolveProcessor processor = CssPluginsFacade.getVariableProcessor(base, name);
-        if (processor.executeInScope(base)) {
-            processFile(base.getContainingFile(), processor, ResolveState.initial().put(PROCESSED_PATHS, new HashSet<String>()));
-        }
-        return processor.getResult();
+        return resolve(base, "variable:" + name, CssPluginsFacade.getVariableProcessor(base, name));
     }
     
     @Nullable
     public static PsiElement resolveMixin(@NotNull PsiElement base, @NotNull String name) {
-        CssResolveProcessor processor = CssPluginsFacade.getMixinProcessor(base, name);
-        if (processor.executeInScope(base)) {
-            processFile(base.getContainingFile(), processor, ResolveState.initial().put(PROCESSED_PATHS, new HashSet<String>()));
+        return resolve(base, "mixin:" + name, CssPluginsFacade.getMixinProcessor(base, name));
+    }
+
+    /**
+     * Resolves using the given processor. The local scope of <tt>base</tt> is always processed, while the result of
+     * processing the containing file and its imports is cached on the file. A cached result is reused as long as none of
+     * the files visited when computing it has been modified. A cached "not found" is only reused as long as the PSI outside
+     * code blocks has not been modified (every stylesheet edit counts), since a new file or import may provide the declaration.
+     * <p>The processor and the resolve state are created per call and never shared, so concurrent resolves need no locking.</p>
+     * @param base the element to resolve from
+     * @param cacheKey the key of the cached result (kind and name)
+     * @param processor the processor doing the resolve
+     * @return the resolved element, or <tt>null</tt> if not found
+     */
+    @Nullable
+    private static PsiElement resolve(@NotNull PsiElement base, @NotNull String cacheKey, @NotNull CssResolveProcessor processor) {
+        if (!processor.executeInScope(base)) {
+            return processor.getResult();
+        }
+        PsiFile file = base.getContainingFile();
+        if (file == null) {
+            return null;
+        }
+
+        ConcurrentMap<String, CachedResolve> cache = getResolveCache(file);
+        PsiModificationTracker modificationTracker = file.getManager().getModificationTracker();
+        CachedResolve cached = cache.get(cacheKey);
+        if (cached != null && cached.isUpToDate(modificationTracker)) {
+            return cached.result;
+        }
+
+        long modificationCount = modificationTracker.getOutOfCodeBlockModificationCount();
+        Map<PsiFile, Long> visitedFiles = new HashMap<PsiFile, Long>();
+        processFile(file, processor, ResolveState.initial().put(PROCESSED_PATHS, new HashSet<String>()).put(VISITED_FILES, visitedFiles));
+        PsiElement result = processor.getResult();
+        cache.put(cacheKey, new CachedResolve(result, visitedFiles, modificationCount));
+        return result;
+    }
+
+    @NotNull
+    private static ConcurrentMap<String, CachedResolve> getResolveCache(@NotNull PsiFile file) {
+        ConcurrentMap<String, CachedResolve> cache = file.getUserData(RESOLVE_CACHE);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<String, CachedResolve>();
+            if (file instanceof UserDataHolderEx) {
+                cache = ((UserDataHolderEx) file).putUserDataIfAbsent(RESOLVE_CACHE, cache);
+            } else {
+                file.putUserData(RESOLVE_CACHE, cache);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * A resolve result together with the modification stamps of the files visited when computing it, and the PSI
+     * modification count at the time. A found declaration is up to date while the visited files are unmodified. A file
+     * created later, which would have been visited before the file of the declaration, is not detected. "Not found" is
+     * only up to date while no PSI outside code blocks has been modified, which includes every edit of a stylesheet.
+     */
+    private static class CachedResolve {
+        private final PsiElement result;
+        private final Map<PsiFile, Long> visitedFiles;
+        private final long modificationCount;
+
+        private CachedResolve(@Nullable PsiElement result, @NotNull Map<PsiFile, Long> visitedFiles, long modificationCount) {
+            this.result = result;
+            this.visitedFiles = visitedFiles;
+            this.modificationCount = modificationCount;
+        }
+
+        private boolean isUpToDate(@NotNull PsiModificationTracker modificationTracker) {
+            if (result == null) {
+                return modificationTracker.getOutOfCodeBlockModificationCount() == modificationCount;
+            }
+            if (!result.isValid()) {
+                return false;
+            }
+            for (Map.Entry<PsiFile, Long> entry : visitedFiles.entrySet()) {
+                PsiFile file = entry.getKey();
+                if (!file.isValid() || file.getModificationStamp() != entry.getValue()) {
+                    return false;
+                }
+            }
+            return true;
         }
-        return processor.getResult();
     }
     
     private static boolean processFile(final PsiFile file, final CssResolveProcessor processor, final ResolveState state) {
@@ -106,52 +189,34 @@ public class CssResolveUtils {
         }
 
         // Recurse on files importing this file
-        CssUtils.getPsiSearchHelper(file.getProject()).processElementsWithWord(new TextOccurenceProcessor() {
-            public boolean execute(PsiElement element, int offsetInElement) {
-                if (element.getParent().getParent() instanceof CssImport) {
-                    CssImport cssImport = (CssImport) element.getParent().getParent();
-                    String[] uris = cssImport.getUriStrings();
-                    for (String uri : uris) {
-                        if (uri != null && uri.endsWith(file.getName())) {
-                            PsiFile[] imports = cssImport.resolve();
-                            for (PsiFile importedFile : imports) {
-                                if (file == importedFile) {
-                                    if (!processFile(cssImport.getContainingFile(), processor, state)) {
-                                        return false;
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-                return true;
+        return CssImportIndex.processImportsOf(file, getResolveSearchScope(file), new Processor<CssImport>() {
+            public boolean process(CssImport cssImport) {
+                return processFile(cssImport.getContainingFile(), processor, state);
             }
-        }, getResolveSearchScope(file), file.getName(), (short) (UsageSearchContext.IN_CODE | UsageSearchContext.IN_STRINGS), true);
-
-        return true;
+        });
     }
 
     @NotNull
-    private static SearchScope getResolveSearchScope(@NotNull PsiFile file) {
+    private static GlobalSearchScope getResolveSearchScope(@NotNull PsiFile file) {
         return GlobalSearchScope.getScopeRestrictedByFileTypes(GlobalSearchScope.projectScope(file.getProject()), file.getFileType());
     }
 
-    private static final Object LOCK = new Object();
-
     private static boolean pushPath(@NotNull PsiFile file, @NotNull ResolveState state) {
-        synchronized (LOCK) {
-            if (!CssUtils.isDynamicCssLanguage(file)) {
-                return false;
-            }
-            Collection<String> paths = state.get(PROCESSED_PATHS);
-            if (paths == null) {
-                return false;
-            }
-            VirtualFile virtualFile = file.getVirtualFile();
-            if (virtualFile != null && paths.add(virtualFile.getPath())) {
-                return true;
-            }
+        if (!CssUtils.isDynamicCssLanguage(file)) {
             return false;
         }
+        Collection<String> paths = state.get(PROCESSED_PATHS);
+        if (paths == null) {
+            return false;
+        }
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile != null && paths.add(virtualFile.getPath())) {
+            Map<PsiFile, Long> visitedFiles = state.get(VISITED_FILES);
+            if (visitedFiles != null) {
+                visitedFiles.put(file, file.getModificationStamp());
+            }
+            return true;
+        }
+        return false;
     }
 }
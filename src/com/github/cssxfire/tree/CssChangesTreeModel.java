@@ -21,11 +21,10 @@ import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeCellRenderer;
-import javax.swing.tree.DefaultTreeModel;
-import javax.swing.tree.TreeCellRenderer;
+import javax.swing.tree.*;
 import java.awt.*;
+import java.util.*;
+import java.util.List;
 
 /**
  * Created by IntelliJ IDEA.
@@ -34,6 +33,15 @@ import java.awt.*;
 public class CssChangesTreeModel extends DefaultTreeModel {
     private static final TreeCellRenderer myTreeCellRenderer = new MyTreeCellRenderer();
 
+    /**
+     * The number of nested transactions in progress
+     */
+    private int transactionDepth = 0;
+    /**
+     * The changes made in the outermost transaction in progress, or <tt>null</tt>
+     */
+    private Transaction transaction;
+
     public CssChangesTreeModel(Project project) {
         super(new CssRootNode(project), true);
     }
@@ -44,34 +52,84 @@ public class CssChangesTreeModel extends DefaultTreeModel {
 
     public void intersect(CssDeclarationPath declarationPath) {
         CssTreeNode rootNode = (CssTreeNode) getRoot();
-        addAbsent(rootNode, declarationPath.getPathFromRoot());
+        addAbsent(rootNode, declarationPath.getPathFromRoot(), 0);
+    }
+
+    /**
+     * Starts collecting changes to the tree. Listeners are not notified until the (outermost) transaction ends,
+     * when a single set of events is fired for all changes. Each call must be followed by a call to
+     * {@link #endTransaction()}, preferably in a finally block.
+     */
+    public void beginTransaction() {
+        if (transactionDepth++ == 0) {
+            transaction = new Transaction();
+        }
+    }
+
+    /**
+     * Ends a transaction started by {@link #beginTransaction()}. If this is the outermost transaction the
+     * listeners are notified of the changes.
+     */
+    public void endTransaction() {
+        if (transactionDepth == 0) {
+            throw new IllegalStateException("No transaction in progress");
+        }
+        if (--transactionDepth == 0) {
+            Transaction finished = transaction;
+            transaction = null;
+            finished.fireEvents();
+        }
+    }
+
+    /**
+     * Removes a node from its parent and notifies listeners.
+     *
+     * @param node the node to remove
+     */
+    public void removeNode(@NotNull CssTreeNode node) {
+        CssTreeNode parent = (CssTreeNode) node.getParent();
+        if (parent != null) {
+            removeChildAndFireEvent(parent, node);
+        }
+    }
+
+    /**
+     * Removes all nodes but the root and notifies listeners.
+     */
+    public void removeAll() {
+        CssTreeNode root = (CssTreeNode) getRoot();
+        beginTransaction();
+        try {
+            while (root.getChildCount() > 0) {
+                removeChildAndFireEvent(root, (CssTreeNode) root.getChildAt(root.getChildCount() - 1));
+            }
+        } finally {
+            endTransaction();
+        }
     }
 
-    private void addAbsent(CssTreeNode parent, CssTreeNode[] nodes) {
-        if (nodes.length == 0) {
+    private void addAbsent(CssTreeNode parent, CssTreeNode[] nodes, int offset) {
+        if (offset == nodes.length) {
             return;
         }
 
-        CssTreeNode currentNode = nodes[0];
-
-        int numChildren = parent.getChildCount();
-        for (int i = 0; i < numChildren; i++) {
-            CssTreeNode child = (CssTreeNode) parent.getChildAt(i);
-            if (child.equals(currentNode)) {
-                if (currentNode instanceof CssDeclarationNode) {
-                    if (isNewAndDeletedDeclaration(currentNode)) {
-                        // remove node and all empty parents
-                        removeWithEmptyParents(child);
-                    } else {
-                        // swap nodes
-                        removeChildAndFireEvent(parent, child);
-                        addChildAndFireEvent(parent, currentNode);
-                    }
-                    return;
+        CssTreeNode currentNode = nodes[offset];
+
+        CssTreeNode child = parent.findChild(currentNode);
+        if (child != null) {
+            if (currentNode instanceof CssDeclarationNode) {
+                if (isNewAndDeletedDeclaration(currentNode)) {
+                    // remove node and all empty parents
+                    removeWithEmptyParents(child);
+                } else {
+                    // swap nodes
+                    removeChildAndFireEvent(parent, child);
+                    addChildAndFireEvent(parent, currentNode);
                 }
-                addAbsent(child, consumeFirst(nodes));
                 return;
             }
+            addAbsent(child, nodes, offset + 1);
+            return;
         }
 
         if (isNewAndDeletedDeclaration(currentNode)) {
@@ -80,11 +138,16 @@ public class CssChangesTreeModel extends DefaultTreeModel {
             }
         } else {
             addChildAndFireEvent(parent, currentNode);
-            addAbsent(currentNode, consumeFirst(nodes));
+            addAbsent(currentNode, nodes, offset + 1);
         }
     }
 
-    private void removeWithEmptyParents(@NotNull CssTreeNode child) {
+    /**
+     * Removes a node, and all its ancestors left without children, and notifies listeners.
+     *
+     * @param child the node to remove
+     */
+    public void removeWithEmptyParents(@NotNull CssTreeNode child) {
         CssTreeNode parent = (CssTreeNode) child.getParent();
         do {
             removeChildAndFireEvent(parent, child);
@@ -101,6 +164,14 @@ public class CssChangesTreeModel extends DefaultTreeModel {
      * @param child  the existing child to remove
      */
     private void removeChildAndFireEvent(CssTreeNode parent, CssTreeNode child) {
+        if (transaction != null) {
+            transaction.childrenChanging(parent);
+            parent.remove(child);
+            if (child instanceof CssDeclarationNode) {
+                transaction.nodeChanged(parent.getParent());
+            }
+            return;
+        }
         int index = parent.getIndex(child);
         parent.remove(child);
         nodesWereRemoved(parent, new int[]{index}, new CssTreeNode[]{child});
@@ -117,6 +188,14 @@ public class CssChangesTreeModel extends DefaultTreeModel {
      * @param child  the new child
      */
     private void addChildAndFireEvent(CssTreeNode parent, CssTreeNode child) {
+        if (transaction != null) {
+            transaction.childrenChanging(parent);
+            insert(parent, child);
+            if (child instanceof CssDeclarationNode) {
+                transaction.nodeChanged(parent.getParent());
+            }
+            return;
+        }
         insert(parent, child);
         nodesWereInserted(parent, new int[]{parent.getIndex(child)});
         if (child instanceof CssDeclarationNode) {
@@ -127,35 +206,133 @@ public class CssChangesTreeModel extends DefaultTreeModel {
 
     /**
      * Adds <tt>child</tt> to <tt>parent</tt>. The insertion index is determined by lexicographically comparing the
-     * text (name) of the siblings.
+     * text (name) of the siblings, which are kept sorted, using binary search.
      * @param parent the parent node
      * @param child the new child node
      */
     private void insert(CssTreeNode parent, CssTreeNode child) {
-        int numChildren = parent.getChildCount();
-        if (numChildren == 0) {
-            parent.add(child);
-            return;
-        }
         final String name = child.getName();
-        for (int i = 0; i < numChildren; i++) {
-            CssTreeNode node = (CssTreeNode) parent.getChildAt(i);
-            if (node.getName().compareTo(name) > 0) {
-                parent.insert(child, i);
-                return;
+        // find the first sibling with a greater name
+        int low = 0;
+        int high = parent.getChildCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (((CssTreeNode) parent.getChildAt(mid)).getName().compareTo(name) > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
             }
         }
-        parent.add(child);
+        parent.insert(child, low);
     }
 
     private boolean isNewAndDeletedDeclaration(DefaultMutableTreeNode node) {
         return node instanceof CssNewDeclarationNode && ((CssNewDeclarationNode) node).isDeleted();
     }
 
-    private CssTreeNode[] consumeFirst(CssTreeNode[] nodes) {
-        CssTreeNode[] rest = new CssTreeNode[nodes.length - 1];
-        System.arraycopy(nodes, 1, rest, 0, rest.length);
-        return rest;
+    /**
+     * The changes collected in a transaction. The original children of each node whose children are changed are
+     * recorded, and compared to the resulting children when the transaction ends.
+     */
+    private class Transaction {
+        // nodes are mapped by identity, since a removed node may be equal to a node inserted later
+        private final Map<TreeNode, TreeNode[]> originalChildren = new IdentityHashMap<TreeNode, TreeNode[]>();
+        private final Map<TreeNode, Map<TreeNode, Integer>> originalIndices = new IdentityHashMap<TreeNode, Map<TreeNode, Integer>>();
+        private final Map<TreeNode, Boolean> changedNodes = new IdentityHashMap<TreeNode, Boolean>();
+
+        private void childrenChanging(@NotNull TreeNode parent) {
+            if (originalChildren.containsKey(parent)) {
+                return;
+            }
+            int numChildren = parent.getChildCount();
+            TreeNode[] children = new TreeNode[numChildren];
+            Map<TreeNode, Integer> indices = new IdentityHashMap<TreeNode, Integer>(numChildren);
+            for (int i = 0; i < numChildren; i++) {
+                children[i] = parent.getChildAt(i);
+                indices.put(children[i], i);
+            }
+            originalChildren.put(parent, children);
+            originalIndices.put(parent, indices);
+        }
+
+        private void nodeChanged(TreeNode node) {
+            if (node != null) {
+                changedNodes.put(node, Boolean.TRUE);
+            }
+        }
+
+        /**
+         * Check if a node was in the tree before the transaction and still is
+         *
+         * @param node the node
+         * @return <tt>true</tt> if listeners may be notified of changes to the node
+         */
+        private boolean isKnown(@NotNull TreeNode node) {
+            if (node == root) {
+                return true;
+            }
+            TreeNode parent = node.getParent();
+            if (parent == null) {
+                return false;
+            }
+            Map<TreeNode, Integer> indices = originalIndices.get(parent);
+            if (indices != null && !indices.containsKey(node)) {
+                // inserted during the transaction
+                return false;
+            }
+            return isKnown(parent);
+        }
+
+        private void fireEvents() {
+            for (Map.Entry<TreeNode, TreeNode[]> entry : originalChildren.entrySet()) {
+                TreeNode parent = entry.getKey();
+                if (!isKnown(parent)) {
+                    continue;
+                }
+                TreeNode[] original = entry.getValue();
+                Map<TreeNode, Integer> indices = originalIndices.get(parent);
+
+                Map<TreeNode, Integer> current = new IdentityHashMap<TreeNode, Integer>();
+                List<Integer> inserted = new ArrayList<Integer>();
+                for (int i = 0; i < parent.getChildCount(); i++) {
+                    TreeNode child = parent.getChildAt(i);
+                    current.put(child, i);
+                    if (!indices.containsKey(child)) {
+                        inserted.add(i);
+                    }
+                }
+
+                List<Integer> removed = new ArrayList<Integer>();
+                for (int i = 0; i < original.length; i++) {
+                    if (!current.containsKey(original[i])) {
+                        removed.add(i);
+                    }
+                }
+
+                if (!removed.isEmpty()) {
+                    int[] removedIndices = new int[removed.size()];
+                    Object[] removedChildren = new Object[removed.size()];
+                    for (int i = 0; i < removedIndices.length; i++) {
+                        removedIndices[i] = removed.get(i);
+                        removedChildren[i] = original[removedIndices[i]];
+                    }
+                    nodesWereRemoved(parent, removedIndices, removedChildren);
+                }
+                if (!inserted.isEmpty()) {
+                    int[] insertedIndices = new int[inserted.size()];
+                    for (int i = 0; i < insertedIndices.length; i++) {
+                        insertedIndices[i] = inserted.get(i);
+                    }
+                    nodesWereInserted(parent, insertedIndices);
+                }
+            }
+
+            for (TreeNode node : changedNodes.keySet()) {
+                if (isKnown(node)) {
+                    nodeChanged(node);
+                }
+            }
+        }
     }
 
     private static class MyTreeCellRenderer extends DefaultTreeCellRenderer {
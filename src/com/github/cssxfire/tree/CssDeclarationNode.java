@@ -26,6 +26,7 @@ import com.intellij.openapi.util.Iconable;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.css.CssDeclaration;
 import com.intellij.psi.css.CssElement;
 import com.intellij.psi.css.CssTerm;
@@ -33,6 +34,7 @@ import com.intellij.psi.css.CssTermList;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.ui.EmptyIcon;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 
@@ -45,6 +47,11 @@ public class CssDeclarationNode extends CssTreeNode implements Navigatable {
     protected final String value;
     protected boolean deleted;
     protected boolean important;
+    /**
+     * The adjacent declarations in the tree, maintained by {@link CssRootNode}
+     */
+    CssDeclarationNode previousDeclaration;
+    CssDeclarationNode nextDeclaration;
 
     public CssDeclarationNode(CssDeclaration cssDeclaration, String value, boolean deleted, boolean important) {
         this.cssDeclaration = cssDeclaration;
@@ -120,6 +127,43 @@ public class CssDeclarationNode extends CssTreeNode implements Navigatable {
         }
     }
 
+    /**
+     * Computes the text replacement equivalent to {@link #applyToCode()}, for applying many changes in one pass.
+     *
+     * @return the replacement, or <tt>null</tt> if this change must be applied with {@link #applyToCode()}
+     */
+    @Nullable
+    TextReplacement createTextReplacement() {
+        if (!isValid()) {
+            return null;
+        }
+        if (deleted) {
+            TextRange range = cssDeclaration.getTextRange();
+            PsiElement nextSibling = cssDeclaration.getNextSibling();
+            if (nextSibling != null && ";".equals(nextSibling.getText())) {
+                range = range.union(nextSibling.getTextRange()); // delete trailing semi-colon
+            }
+            return new TextReplacement(cssDeclaration.getContainingFile(), range, "");
+        }
+        if (cssDeclaration.isImportant() == important) {
+            // Priority not changed - only need to alter the value text.
+            CssElement navigationElement = getNavigationElement();
+            if (navigationElement instanceof CssTerm || navigationElement instanceof CssTermList) {
+                return new TextReplacement(navigationElement.getContainingFile(), navigationElement.getTextRange(), value);
+            }
+            if (navigationElement instanceof CssDeclaration) {
+                CssTermList valueElement = ((CssDeclaration) navigationElement).getValue();
+                if (valueElement != null && valueElement.getText().indexOf('!') == -1) {
+                    return new TextReplacement(valueElement.getContainingFile(), valueElement.getTextRange(), value);
+                }
+            }
+            return null;
+        }
+        // Priority has changed - replace the whole declaration
+        PsiFile file = cssDeclaration.getContainingFile();
+        return new TextReplacement(file, cssDeclaration.getTextRange(), cssDeclaration.getPropertyName() + ":" + value + (important ? " !important" : ""));
+    }
+
     @Override
     public ActionGroup getActionGroup() {
         return isValid()
@@ -176,9 +220,7 @@ public class CssDeclarationNode extends CssTreeNode implements Navigatable {
 
     @Override
     public int hashCode() {
-        int result = cssDeclaration != null ? cssDeclaration.hashCode() : 0;
-        result = 31 * result + (value != null ? value.hashCode() : 0);
-        return result;
+        return cssDeclaration != null ? cssDeclaration.hashCode() : 0;
     }
 
     public boolean isDeleted() {
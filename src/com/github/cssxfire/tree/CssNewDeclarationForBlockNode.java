@@ -17,7 +17,6 @@
 package com.github.cssxfire.tree;
 
 import com.intellij.psi.css.CssBlock;
-import com.intellij.psi.css.CssDeclaration;
 import com.intellij.util.IncorrectOperationException;
 import org.jetbrains.annotations.NotNull;
 
@@ -26,19 +25,15 @@ import org.jetbrains.annotations.NotNull;
  * User: Ronnie
  */
 public class CssNewDeclarationForBlockNode extends CssNewDeclarationNode {
-    public CssNewDeclarationForBlockNode(@NotNull CssDeclaration cssDeclaration, @NotNull CssBlock destinationBlock, boolean deleted) {
-        super(cssDeclaration, destinationBlock, deleted);
+    public CssNewDeclarationForBlockNode(@NotNull String property, @NotNull String value, boolean important, @NotNull CssBlock destinationBlock, boolean deleted) {
+        super(property, value, important, destinationBlock, deleted);
     }
 
     @Override
     public void applyToCode() {
         try {
             if (isValid() && !deleted) {
-                CssDeclaration[] declarations = ((CssBlock) destinationBlock).getDeclarations();
-                CssDeclaration relativeTo = declarations != null && declarations.length > 0
-                        ? declarations[declarations.length - 1]
-                        : null;
-                ((CssBlock) destinationBlock).addDeclaration(property, value + (important ? " !important" : ""), relativeTo);
+                addDeclarationTo((CssBlock) destinationBlock);
             }
         } catch (IncorrectOperationException e) {
             e.printStackTrace();
@@ -27,8 +27,8 @@ import org.jetbrains.annotations.NotNull;
  * User: Ronnie
  */
 public class CssNewDeclarationForRulesetListNode extends CssNewDeclarationNode {
-    protected CssNewDeclarationForRulesetListNode(@NotNull CssDeclaration cssDeclaration, @NotNull CssRulesetList destinationElement, boolean deleted) {
-        super(cssDeclaration, destinationElement, deleted);
+    protected CssNewDeclarationForRulesetListNode(@NotNull String property, @NotNull String value, boolean important, @NotNull CssRulesetList destinationElement, boolean deleted) {
+        super(property, value, important, destinationElement, deleted);
     }
 
     private CssBlock ensureSelectorTargetExists() {
@@ -62,13 +62,7 @@ public class CssNewDeclarationForRulesetListNode extends CssNewDeclarationNode {
     public void applyToCode() {
         try {
             if (isValid() && !deleted) {
-                CssBlock cssBlock = ensureSelectorTargetExists();
-
-                CssDeclaration[] declarations = cssBlock.getDeclarations();
-                CssDeclaration anchor = declarations != null && declarations.length > 0
-                        ? declarations[declarations.length - 1]
-                        : null;
-                cssBlock.addDeclaration(property, value + (important ? " !important" : ""), anchor);
+                addDeclarationTo(ensureSelectorTargetExists());
             }
         } catch (IncorrectOperationException e) {
             e.printStackTrace();
@@ -16,40 +16,69 @@
 
 package com.github.cssxfire.tree;
 
+import com.github.cssxfire.CssUtils;
 import com.github.cssxfire.ui.Colors;
+import com.intellij.openapi.util.Iconable;
 import com.intellij.psi.css.*;
+import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.ui.EmptyIcon;
 import org.jetbrains.annotations.NotNull;
 
+import javax.swing.*;
 import javax.swing.tree.TreeNode;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
  */
 public abstract class CssNewDeclarationNode extends CssDeclarationNode {
+    /**
+     * The number of nodes created, each of which used to parse a declaration
+     */
+    private static final AtomicLong createdCount = new AtomicLong();
+    /**
+     * The number of declarations actually parsed, for the icon or when applied
+     */
+    private static final AtomicLong parseCount = new AtomicLong();
+    /**
+     * The icon of a declaration, taken from a declaration created on first use
+     */
+    private static volatile Icon declarationIcon;
+
     @NotNull
     protected final CssElement destinationBlock;
     @NotNull
     protected final String property;
 
-    public static CssNewDeclarationNode forDestination(@NotNull CssDeclaration cssDeclaration, @NotNull CssElement destinationElement, boolean deleted) {
+    public static CssNewDeclarationNode forDestination(@NotNull String property, @NotNull String value, boolean important, @NotNull CssElement destinationElement, boolean deleted) {
         if (destinationElement instanceof CssBlock) {
-            return new CssNewDeclarationForBlockNode(cssDeclaration, (CssBlock) destinationElement, deleted);
+            return new CssNewDeclarationForBlockNode(property, value, important, (CssBlock) destinationElement, deleted);
         }
         if (destinationElement instanceof CssMediumList) {
-            return new CssNewDeclarationForMediumNode(cssDeclaration, (CssMediumList) destinationElement, deleted);
+            return new CssNewDeclarationForMediumNode(property, value, important, (CssMediumList) destinationElement, deleted);
         }
         if (destinationElement instanceof CssRulesetList) {
-            return new CssNewDeclarationForRulesetListNode(cssDeclaration, (CssRulesetList) destinationElement, deleted);
+            return new CssNewDeclarationForRulesetListNode(property, value, important, (CssRulesetList) destinationElement, deleted);
         }
         throw new IllegalArgumentException("Can not create CssNewDeclarationNode for destination of type " + destinationElement.getClass().getName());
     }
 
-    protected CssNewDeclarationNode(@NotNull CssDeclaration cssDeclaration, @NotNull CssElement destinationElement, boolean deleted) {
-        //noinspection ConstantConditions
-        super(cssDeclaration, cssDeclaration.getValue().getText(), deleted, cssDeclaration.isImportant());
+    protected CssNewDeclarationNode(@NotNull String property, @NotNull String value, boolean important, @NotNull CssElement destinationElement, boolean deleted) {
+        super(null, value, deleted, important);
         this.destinationBlock = destinationElement;
-        this.property = cssDeclaration.getPropertyName();
+        this.property = property;
+        createdCount.incrementAndGet();
+    }
+
+    /**
+     * Get the number of declaration parses avoided in this session, i.e. the number of new declaration nodes created
+     * (each of which used to parse a dummy file) minus the number of declarations parsed for the icon or when applied
+     *
+     * @return the number of parses avoided
+     */
+    public static long getAvoidedParseCount() {
+        return createdCount.get() - parseCount.get();
     }
 
     /**
@@ -59,19 +88,65 @@ public abstract class CssNewDeclarationNode extends CssDeclarationNode {
     @Override
     public abstract void applyToCode();
 
+    /**
+     * Adds this declaration last in the given block.
+     * <br><br>Must be called in a write-action
+     *
+     * @param block the block to add the declaration to
+     * @throws IncorrectOperationException if the declaration can not be added
+     */
+    protected final void addDeclarationTo(@NotNull CssBlock block) throws IncorrectOperationException {
+        CssDeclaration[] declarations = block.getDeclarations();
+        CssDeclaration anchor = declarations != null && declarations.length > 0
+                ? declarations[declarations.length - 1]
+                : null;
+        parseCount.incrementAndGet();
+        block.addDeclaration(property, value + (important ? " !important" : ""), anchor);
+    }
+
+    /**
+     * New declarations are formatted by the destination, and thus always applied with {@link #applyToCode()}
+     *
+     * @return <tt>null</tt>
+     */
+    @Override
+    final TextReplacement createTextReplacement() {
+        return null;
+    }
+
     @Override
     public final boolean isValid() {
         return destinationBlock.isValid();
     }
 
+    @Override
+    public Icon getIcon() {
+        if (!isValid()) {
+            return EmptyIcon.ICON_16;
+        }
+        Icon icon = declarationIcon;
+        if (icon == null) {
+            parseCount.incrementAndGet();
+            CssDeclaration declaration = CssUtils.createDeclaration(destinationBlock.getProject(), ".foo", property, value, important);
+            icon = declaration.getIcon(Iconable.ICON_FLAG_VISIBILITY | Iconable.ICON_FLAG_READ_STATUS);
+            declarationIcon = icon;
+        }
+        return icon;
+    }
+
     @Override
     public String getName() {
         return property;
     }
 
+    @Override
+    public String getPropertyName() {
+        return property;
+    }
+
     @Override
     public final String getText() {
-        String text = cssDeclaration.getText();
+        String text = property + ": " + value + (important ? " !important" : "");
         return deleted
                 ? wrapWithHtmlColor("<strike>" + text + "</strike>", isValid() ? Colors.getAdded() : Colors.getInvalid())
                 : wrapWithHtmlColor(text, isValid() ? Colors.getAdded() : Colors.getInvalid());
@@ -103,8 +178,7 @@ public abstract class CssNewDeclarationNode extends CssDeclarationNode {
 
     @Override
     public final int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + destinationBlock.hashCode();
+        int result = destinationBlock.hashCode();
         result = 31 * result + property.hashCode();
         return result;
     }
@@ -23,8 +23,12 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiManager;
 import com.intellij.util.ui.EmptyIcon;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.util.Enumeration;
 
 /**
  * Created by IntelliJ IDEA.
@@ -32,11 +36,106 @@ import javax.swing.*;
  */
 public class CssRootNode extends CssTreeNode {
     private final Project project;
+    /**
+     * The ends of the list of all declarations in the tree, linked in tree order
+     */
+    private CssDeclarationNode firstDeclaration;
+    private CssDeclarationNode lastDeclaration;
 
     public CssRootNode(Project project) {
         this.project = project;
     }
 
+    /**
+     * Get the first declaration in the tree
+     *
+     * @return the first declaration, or <tt>null</tt> if there are none
+     */
+    @Nullable
+    public CssDeclarationNode getFirstDeclaration() {
+        return firstDeclaration;
+    }
+
+    /**
+     * Get the last declaration in the tree
+     *
+     * @return the last declaration, or <tt>null</tt> if there are none
+     */
+    @Nullable
+    public CssDeclarationNode getLastDeclaration() {
+        return lastDeclaration;
+    }
+
+    /**
+     * Adds the declarations of a subtree just inserted into this tree to the list of declarations
+     *
+     * @param subtree the inserted node
+     */
+    void linkDeclarations(@NotNull CssTreeNode subtree) {
+        Enumeration enumeration = subtree.preorderEnumeration();
+        while (enumeration.hasMoreElements()) {
+            Object node = enumeration.nextElement();
+            if (node instanceof CssDeclarationNode) {
+                link((CssDeclarationNode) node);
+            }
+        }
+    }
+
+    /**
+     * Removes the declarations of a subtree about to be removed from this tree from the list of declarations
+     *
+     * @param subtree the node to remove
+     */
+    void unlinkDeclarations(@NotNull CssTreeNode subtree) {
+        Enumeration enumeration = subtree.preorderEnumeration();
+        while (enumeration.hasMoreElements()) {
+            Object node = enumeration.nextElement();
+            if (node instanceof CssDeclarationNode) {
+                unlink((CssDeclarationNode) node);
+            }
+        }
+    }
+
+    private void link(@NotNull CssDeclarationNode node) {
+        // declarations are leafs, so the closest preceding declaration leaf is the previous declaration
+        DefaultMutableTreeNode leaf = node.getPreviousLeaf();
+        while (leaf != null && !(leaf instanceof CssDeclarationNode)) {
+            leaf = leaf.getPreviousLeaf();
+        }
+        CssDeclarationNode previous = (CssDeclarationNode) leaf;
+        CssDeclarationNode next = previous != null ? previous.nextDeclaration : firstDeclaration;
+
+        node.previousDeclaration = previous;
+        node.nextDeclaration = next;
+        if (previous != null) {
+            previous.nextDeclaration = node;
+        } else {
+            firstDeclaration = node;
+        }
+        if (next != null) {
+            next.previousDeclaration = node;
+        } else {
+            lastDeclaration = node;
+        }
+    }
+
+    private void unlink(@NotNull CssDeclarationNode node) {
+        CssDeclarationNode previous = node.previousDeclaration;
+        CssDeclarationNode next = node.nextDeclaration;
+        if (previous != null) {
+            previous.nextDeclaration = next;
+        } else {
+            firstDeclaration = next;
+        }
+        if (next != null) {
+            next.previousDeclaration = previous;
+        } else {
+            lastDeclaration = previous;
+        }
+        node.previousDeclaration = null;
+        node.nextDeclaration = null;
+    }
+
     @Override
     public Icon getIcon() {
         VirtualFile baseDir = project.getBaseDir();
@@ -39,11 +39,14 @@ public class CssSelectorNode extends CssTreeNode implements Navigatable {
     @NotNull
     private final String selector;
     @NotNull
+    private final String normalizedSelector;
+    @NotNull
     protected final PsiElement cssBlock;
     private static final String EMPTY_STRING = "";
 
     public CssSelectorNode(@NotNull String selector, @NotNull PsiElement cssBlock) {
         this.selector = selector;
+        this.normalizedSelector = StringUtils.normalizeWhitespace(selector);
         this.cssBlock = cssBlock;
     }
 
@@ -100,12 +103,12 @@ public class CssSelectorNode extends CssTreeNode implements Navigatable {
 
         CssSelectorNode that = (CssSelectorNode) o;
 
-        return StringUtils.normalizeWhitespace(selector).equals(StringUtils.normalizeWhitespace(that.selector));
+        return normalizedSelector.equals(that.normalizedSelector);
     }
 
     @Override
     public int hashCode() {
-        return selector.hashCode();
+        return normalizedSelector.hashCode();
     }
 
     @NotNull
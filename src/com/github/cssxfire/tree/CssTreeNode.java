@@ -22,13 +22,26 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.MutableTreeNode;
+import javax.swing.tree.TreeNode;
 import java.awt.*;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Created by IntelliJ IDEA.
  * User: Ronnie
  */
 public abstract class CssTreeNode extends DefaultMutableTreeNode {
+    /**
+     * The children of this node, keyed by themselves, for looking up an equal child without scanning
+     */
+    private final Map<TreeNode, CssTreeNode> childMap = new HashMap<TreeNode, CssTreeNode>();
+    /**
+     * The sum of the leaf counts of the children, kept up to date as nodes are inserted and removed
+     */
+    private int childLeafCount = 0;
+
     @Nullable
     public abstract Icon getIcon();
 
@@ -52,6 +65,84 @@ public abstract class CssTreeNode extends DefaultMutableTreeNode {
     @Nullable
     public abstract ActionGroup getActionGroup();
 
+    /**
+     * Finds the child equal to a given node
+     *
+     * @param node the node to look for
+     * @return the equal child, or <tt>null</tt> if there is none
+     */
+    @Nullable
+    public CssTreeNode findChild(@NotNull CssTreeNode node) {
+        return childMap.get(node);
+    }
+
+    /**
+     * Get the number of leafs in the subtree of this node, i.e. the number of leafs enumerated by
+     * {@link TreeUtils#iterateLeafs(CssTreeNode)}
+     *
+     * @return the number of leafs
+     */
+    public int getLeafCount() {
+        if (isLeaf()) {
+            return isRoot() ? 0 : 1;
+        }
+        return childLeafCount;
+    }
+
+    @Override
+    public void insert(MutableTreeNode newChild, int childIndex) {
+        TreeNode oldParent = newChild.getParent();
+        if (oldParent != null) {
+            // detach first, so that the counts are updated for the old parent separately
+            ((MutableTreeNode) oldParent).remove(newChild);
+        }
+        int countBefore = getCountInParent();
+        super.insert(newChild, childIndex);
+        if (newChild instanceof CssTreeNode) {
+            CssTreeNode child = (CssTreeNode) newChild;
+            childMap.put(child, child);
+            childLeafCount += child.getCountInParent();
+            TreeNode root = getRoot();
+            if (root instanceof CssRootNode) {
+                ((CssRootNode) root).linkDeclarations(child);
+            }
+        }
+        updateAncestors(getCountInParent() - countBefore);
+    }
+
+    @Override
+    public void remove(int childIndex) {
+        int countBefore = getCountInParent();
+        TreeNode child = getChildAt(childIndex);
+        TreeNode root = getRoot();
+        if (root instanceof CssRootNode && child instanceof CssTreeNode) {
+            ((CssRootNode) root).unlinkDeclarations((CssTreeNode) child);
+        }
+        super.remove(childIndex);
+        if (child instanceof CssTreeNode) {
+            childMap.remove(child);
+            childLeafCount -= ((CssTreeNode) child).getCountInParent();
+        }
+        updateAncestors(getCountInParent() - countBefore);
+    }
+
+    /**
+     * Get the number of leafs this node contributes with to the leaf count of its parent
+     *
+     * @return the number of leafs
+     */
+    private int getCountInParent() {
+        return isLeaf() ? 1 : childLeafCount;
+    }
+
+    private void updateAncestors(int delta) {
+        if (delta != 0) {
+            for (TreeNode ancestor = getParent(); ancestor instanceof CssTreeNode; ancestor = ancestor.getParent()) {
+                ((CssTreeNode) ancestor).childLeafCount += delta;
+            }
+        }
+    }
+
     @NotNull
     protected String wrapWithHtml(String text) {
         return "<html>" + text + "</html>";
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.tree;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiDocumentManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Applies many pending changes at once. Changes of existing declarations are collected per document and applied as
+ * plain text replacements, in one pass per document in descending offset order, followed by a single commit.
+ * New declarations are still added through PSI, to be formatted by the destination.
+ */
+public class PendingChangesApplier {
+    private static final Logger LOG = Logger.getInstance(PendingChangesApplier.class.getName());
+
+    private static final Comparator<MarkedReplacement> BY_START_OFFSET = new Comparator<MarkedReplacement>() {
+        public int compare(MarkedReplacement r1, MarkedReplacement r2) {
+            return r1.marker.getStartOffset() - r2.marker.getStartOffset();
+        }
+    };
+
+    /**
+     * Applies the given changes to the code.<br><br>
+     * <b>Note:</b> Must be invoked in a {@link com.intellij.openapi.application.Application#runWriteAction write-action}
+     *
+     * @param project      the project
+     * @param declarations the changes, in tree order - if two changes affect the same text the first one is applied
+     */
+    public static void apply(@NotNull Project project, @NotNull Collection<CssDeclarationNode> declarations) {
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+        documentManager.commitAllDocuments();
+
+        // compute all replacements before anything is changed, tracking their ranges with markers
+        Map<Document, List<MarkedReplacement>> replacements = new LinkedHashMap<Document, List<MarkedReplacement>>();
+        List<CssDeclarationNode> psiChanges = new ArrayList<CssDeclarationNode>();
+        int order = 0;
+        for (CssDeclarationNode declaration : declarations) {
+            TextReplacement replacement = declaration.createTextReplacement();
+            Document document = replacement != null && replacement.file.getContext() == null
+                    ? documentManager.getDocument(replacement.file)
+                    : null;
+            if (document == null || !document.isWritable()) {
+                psiChanges.add(declaration);
+                continue;
+            }
+            List<MarkedReplacement> documentReplacements = replacements.get(document);
+            if (documentReplacements == null) {
+                documentReplacements = new ArrayList<MarkedReplacement>();
+                replacements.put(document, documentReplacements);
+            }
+            RangeMarker marker = document.createRangeMarker(replacement.range.getStartOffset(), replacement.range.getEndOffset());
+            documentReplacements.add(new MarkedReplacement(marker, replacement.text, order++));
+        }
+
+        for (CssDeclarationNode declaration : psiChanges) {
+            declaration.applyToCode();
+        }
+
+        for (Map.Entry<Document, List<MarkedReplacement>> entry : replacements.entrySet()) {
+            Document document = entry.getKey();
+            documentManager.doPostponedOperationsAndUnblockDocument(document);
+
+            List<MarkedReplacement> documentReplacements = removeOverlapping(entry.getValue());
+            for (int i = documentReplacements.size() - 1; i >= 0; i--) {
+                MarkedReplacement replacement = documentReplacements.get(i);
+                document.replaceString(replacement.marker.getStartOffset(), replacement.marker.getEndOffset(), replacement.text);
+            }
+            for (MarkedReplacement replacement : entry.getValue()) {
+                replacement.marker.dispose();
+            }
+        }
+        documentManager.commitAllDocuments();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Applied " + order + " text replacements in " + replacements.size() + " documents and "
+                    + psiChanges.size() + " changes through PSI");
+        }
+    }
+
+    /**
+     * Drops invalid replacements, and of any replacements with overlapping ranges keeps only the first one in tree
+     * order. This matches applying the nodes one by one, where the first change invalidated the PSI the later one
+     * would have changed.
+     *
+     * @param replacements the replacements for a document
+     * @return the non-overlapping replacements sorted by start offset
+     */
+    @NotNull
+    private static List<MarkedReplacement> removeOverlapping(@NotNull List<MarkedReplacement> replacements) {
+        List<MarkedReplacement> sorted = new ArrayList<MarkedReplacement>(replacements.size());
+        for (MarkedReplacement replacement : replacements) {
+            if (replacement.marker.isValid()) {
+                sorted.add(replacement);
+            }
+        }
+        Collections.sort(sorted, BY_START_OFFSET);
+
+        List<MarkedReplacement> result = new ArrayList<MarkedReplacement>(sorted.size());
+        MarkedReplacement last = null;
+        for (MarkedReplacement replacement : sorted) {
+            if (last != null && replacement.marker.getStartOffset() < last.marker.getEndOffset()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Overlapping replacements: '" + last.text + "' and '" + replacement.text + "'");
+                }
+                if (replacement.order < last.order) {
+                    result.set(result.size() - 1, replacement);
+                    last = replacement;
+                }
+                continue;
+            }
+            result.add(replacement);
+            last = replacement;
+        }
+        return result;
+    }
+
+    private static class MarkedReplacement {
+        private final RangeMarker marker;
+        private final String text;
+        private final int order;
+
+        private MarkedReplacement(RangeMarker marker, String text, int order) {
+            this.marker = marker;
+            this.text = text;
+            this.order = order;
+        }
+    }
+}
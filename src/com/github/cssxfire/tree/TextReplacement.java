@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.tree;
+
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A replacement of a range of text in a file
+ */
+class TextReplacement {
+    @NotNull
+    final PsiFile file;
+    @NotNull
+    final TextRange range;
+    @NotNull
+    final String text;
+
+    TextReplacement(@NotNull PsiFile file, @NotNull TextRange range, @NotNull String text) {
+        this.file = file;
+        this.range = range;
+        this.text = text;
+    }
+}
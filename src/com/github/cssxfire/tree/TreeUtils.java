@@ -27,7 +27,8 @@ import java.util.*;
  */
 public class TreeUtils {
     /**
-     * Find the declaration node which either preceeds or follows the given anchor.
+     * Find the declaration node which either preceeds or follows the given anchor. If the anchor is not a declaration
+     * the first (or last) declaration is returned.
      *
      * @param root      the tree root
      * @param anchor    the anchor (optional)
@@ -35,53 +36,27 @@ public class TreeUtils {
      * @return the next (or previous) declaration node relative to the anchor, or <tt>null</tt> if no declaration node found.
      */
     @Nullable
-    public static CssDeclarationNode seek(@NotNull CssTreeNode root, @Nullable CssTreeNode anchor, int direction) {
+    public static CssDeclarationNode seek(@NotNull CssRootNode root, @Nullable CssTreeNode anchor, int direction) {
         if (anchor == null) {
-            // seek to first leaf
-            return (CssDeclarationNode) iterateLeafs(root).iterator().next();
+            // seek to first declaration
+            return root.getFirstDeclaration();
         }
 
-        List<CssTreeNode> flattened = flatten(root);
-        if (direction < 0) {
-            Collections.reverse(flattened);
-        }
-
-        boolean anchorFound = false;
-        for (CssTreeNode node : flattened) {
-            if (node == anchor) {
-                anchorFound = true;
-                continue;
-            }
-            if (anchorFound && node instanceof CssDeclarationNode) {
-                return (CssDeclarationNode) node;
-            }
+        CssDeclarationNode found = null;
+        if (anchor instanceof CssDeclarationNode && anchor.getRoot() == root) {
+            CssDeclarationNode declarationNode = (CssDeclarationNode) anchor;
+            found = direction < 0 ? declarationNode.previousDeclaration : declarationNode.nextDeclaration;
         }
 
         // Not found after the anchor, now try from start
-        for (CssTreeNode node : flattened) {
-            if (node instanceof CssDeclarationNode) {
-                return (CssDeclarationNode) node;
-            }
+        if (found == null) {
+            found = direction < 0 ? root.getLastDeclaration() : root.getFirstDeclaration();
         }
-
-        return null;
-    }
-
-    private static List<CssTreeNode> flatten(@NotNull CssTreeNode root) {
-        List<CssTreeNode> flattened = new ArrayList<CssTreeNode>();
-        Enumeration enumeration = root.breadthFirstEnumeration();
-        while (enumeration.hasMoreElements()) {
-            flattened.add((CssTreeNode) enumeration.nextElement());
-        }
-        return flattened;
+        return found;
     }
 
     public static int countLeafs(CssTreeNode root) {
-        int numLeafs = 0;
-        for (CssTreeNode leaf : iterateLeafs(root)) {
-            numLeafs++;
-        }
-        return numLeafs;
+        return root.getLeafCount();
     }
 
     public static Iterable<CssTreeNode> iterateLeafs(CssTreeNode root) {
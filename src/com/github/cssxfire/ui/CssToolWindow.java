@@ -17,6 +17,7 @@
 package com.github.cssxfire.ui;
 
 import com.github.cssxfire.IncomingChangesComponent;
+import com.github.cssxfire.ProjectSettings;
 import com.github.cssxfire.action.ApplyAll;
 import com.github.cssxfire.action.ClearAll;
 import com.github.cssxfire.tree.*;
@@ -24,10 +25,16 @@ import com.intellij.ide.DataManager;
 import com.intellij.openapi.actionSystem.*;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.CommandProcessor;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.openapi.ui.popup.ListPopup;
+import com.intellij.util.Alarm;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -41,6 +48,8 @@ import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -51,9 +60,15 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
     private final JTree tree;
     private JButton clearButton, applyButton;
     private final Project project;
+    /**
+     * Documents changed by applying changes, waiting to be saved
+     */
+    private final Set<Document> unsavedDocuments = new LinkedHashSet<Document>();
+    private final Alarm saveAlarm;
 
     public CssToolWindow(final Project project) {
         this.project = project;
+        this.saveAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
         this.treeModel = new CssChangesTreeModel(project);
 
         setLayout(new BorderLayout());
@@ -185,42 +200,97 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
     }
 
     public void clearTree() {
-        CssTreeNode root = (CssTreeNode) treeModel.getRoot();
-        root.removeAllChildren();
-        treeModel.nodeStructureChanged(root);
+        treeModel.removeAll();
     }
 
     private void deleteNode(CssTreeNode node) {
-        CssTreeNode parent = (CssTreeNode) node.getParent();
-        if (parent != null) {
-            int index = parent.getIndex(node);
-            parent.remove(node);
-            treeModel.nodesWereRemoved(parent, new int[]{index}, new CssTreeNode[]{node});
-            if (node instanceof CssDeclarationNode) {
-                // notify that file node is changed (update the number of changes in file)
-                treeModel.nodeChanged(parent.getParent());
+        if (node.getParent() != null) {
+            treeModel.removeWithEmptyParents(node);
+        }
+    }
+
+    /**
+     * Collects the declarations in the subtree of a node, in tree order
+     *
+     * @param node the node
+     * @return the declarations
+     */
+    @NotNull
+    private static Collection<CssDeclarationNode> getDeclarations(@NotNull CssTreeNode node) {
+        Collection<CssDeclarationNode> declarations = new ArrayList<CssDeclarationNode>();
+        for (CssTreeNode leaf : TreeUtils.iterateLeafs(node)) {
+            if (leaf instanceof CssDeclarationNode) {
+                declarations.add((CssDeclarationNode) leaf);
             }
-            if (parent.getChildCount() == 0) {
-                deleteNode(parent);
+        }
+        return declarations;
+    }
+
+    /**
+     * Deletes the given nodes, notifying the tree listeners once
+     *
+     * @param nodes the nodes to delete
+     */
+    private void deleteNodes(Collection<? extends CssTreeNode> nodes) {
+        treeModel.beginTransaction();
+        try {
+            for (CssTreeNode node : nodes) {
+                deleteNode(node);
             }
+        } finally {
+            treeModel.endTransaction();
         }
     }
 
     /**
      * Executes a runnable in a write action. The command may be undo'ed. After
-     * the command has been executed all documents in project will be saved, which will
+     * the command has been executed the documents changed by it will be saved, which will
      * trigger other actions which listen for file changes such as "Transfer files"
      *
      * @param command the command
      */
     private void executeCommand(final Runnable command) {
-        CommandProcessor.getInstance().executeCommand(project, new Runnable() {
-            public void run() {
-                ApplicationManager.getApplication().runWriteAction(command);
+        final Set<Document> changedDocuments = new LinkedHashSet<Document>();
+        DocumentListener listener = new DocumentAdapter() {
+            @Override
+            public void documentChanged(DocumentEvent e) {
+                changedDocuments.add(e.getDocument());
             }
-        }, "Apply CSS", "CSS");
+        };
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(listener);
+        try {
+            CommandProcessor.getInstance().executeCommand(project, new Runnable() {
+                public void run() {
+                    ApplicationManager.getApplication().runWriteAction(command);
+                }
+            }, "Apply CSS", "CSS");
+        } finally {
+            EditorFactory.getInstance().getEventMulticaster().removeDocumentListener(listener);
+        }
 
-        FileDocumentManager.getInstance().saveAllDocuments();
+        unsavedDocuments.addAll(changedDocuments);
+        int saveDelay = ProjectSettings.getInstance(project).getSaveDelay();
+        saveAlarm.cancelAllRequests();
+        if (saveDelay > 0) {
+            saveAlarm.addRequest(new Runnable() {
+                public void run() {
+                    saveDocuments();
+                }
+            }, saveDelay);
+        } else {
+            saveDocuments();
+        }
+    }
+
+    /**
+     * Saves the documents changed by applying changes
+     */
+    private void saveDocuments() {
+        FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        for (Document document : unsavedDocuments) {
+            fileDocumentManager.saveDocument(document);
+        }
+        unsavedDocuments.clear();
     }
 
     //
@@ -230,22 +300,8 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
     public void applyPending() {
         executeCommand(new Runnable() {
             public void run() {
-                CssTreeNode root = (CssTreeNode) treeModel.getRoot();
-                CssTreeNode leaf;
-
-                while ((leaf = (CssTreeNode) root.getFirstLeaf()) != null) {
-                    if (leaf.isRoot()) {
-                        // eventually getFirstLeaf() will return the root itself
-                        break;
-                    }
-                    if (leaf instanceof CssDeclarationNode) {
-                        CssDeclarationNode declarationNode = (CssDeclarationNode) leaf;
-                        declarationNode.applyToCode();
-                    }
-                    treeModel.removeNodeFromParent(leaf);
-                }
-
-                treeModel.nodeStructureChanged(root);
+                PendingChangesApplier.apply(project, getDeclarations((CssTreeNode) treeModel.getRoot()));
+                treeModel.removeAll();
             }
         });
     }
@@ -257,18 +313,11 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
         }
         Object source = selectedPath.getLastPathComponent();
         if (source instanceof CssDirectoryNode || source instanceof CssFileNode || source instanceof CssSelectorNode) {
-            final Collection<CssDeclarationNode> declarations = new ArrayList<CssDeclarationNode>();
-            for (CssTreeNode leaf : TreeUtils.iterateLeafs((CssTreeNode) source)) {
-                if (leaf instanceof CssDeclarationNode) {
-                    declarations.add((CssDeclarationNode) leaf);
-                }
-            }
+            final Collection<CssDeclarationNode> declarations = getDeclarations((CssTreeNode) source);
             executeCommand(new Runnable() {
                 public void run() {
-                    for (CssDeclarationNode declarationNode : declarations) {
-                        declarationNode.applyToCode();
-                        deleteNode(declarationNode);
-                    }
+                    PendingChangesApplier.apply(project, declarations);
+                    deleteNodes(declarations);
                 }
             });
         } else if (source instanceof CssDeclarationNode) {
@@ -289,15 +338,7 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
         }
         Object source = selectedPath.getLastPathComponent();
         if (source instanceof CssDirectoryNode || source instanceof CssFileNode || source instanceof CssSelectorNode) {
-            final Collection<CssDeclarationNode> declarations = new ArrayList<CssDeclarationNode>();
-            for (CssTreeNode leaf : TreeUtils.iterateLeafs((CssTreeNode) source)) {
-                if (leaf instanceof CssDeclarationNode) {
-                    declarations.add((CssDeclarationNode) leaf);
-                }
-            }
-            for (CssDeclarationNode declarationNode : declarations) {
-                deleteNode(declarationNode);
-            }
+            deleteNodes(getDeclarations((CssTreeNode) source));
         } else if (source instanceof CssDeclarationNode) {
             deleteNode((CssDeclarationNode) source);
         }
@@ -345,7 +386,7 @@ public class CssToolWindow extends JPanel implements TreeModelListener, TreeView
     }
 
     public void select(int direction) {
-        CssTreeNode root = (CssTreeNode) treeModel.getRoot();
+        CssRootNode root = (CssRootNode) treeModel.getRoot();
         TreePath selectionPath = tree.getSelectionPath();
         CssTreeNode anchor = selectionPath == null ? null : (CssTreeNode) selectionPath.getLastPathComponent();
         CssDeclarationNode declarationNode = TreeUtils.seek(root, anchor, direction);
@@ -21,22 +21,35 @@ import com.github.cssxfire.FirebugChangesBean;
 import com.github.cssxfire.FirebugEvent;
 import com.intellij.openapi.diagnostic.Logger;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.*;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Created by IntelliJ IDEA.
+ * Serves the requests of one connection for the blocking {@link SimpleWebServer}. The connection is kept open for
+ * further requests as long as the client wants it to, and pipelined requests are answered in order.
+ * <p><p>Created by IntelliJ IDEA.
  * User: Ronnie
  */
 public class HttpRequest implements Runnable {
     private static final Logger LOG = Logger.getInstance(HttpRequest.class.getName());
 
+    /**
+     * Time in milliseconds an idle persistent connection is kept open
+     */
+    static final int KEEP_ALIVE_TIMEOUT = 15000;
+    /**
+     * The largest request body accepted
+     */
+    static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
     private static final String EMPTY_STRING = "";
+    private static final String BATCH_PATH = "/batch";
     private Socket socket;
 
     public HttpRequest(Socket socket) throws Exception {
@@ -45,41 +58,96 @@ public class HttpRequest implements Runnable {
 
     public void run() {
         try {
-            processRequest();
+            processRequests();
+        } catch (SocketTimeoutException e) {
+            // idle persistent connection
         } catch (Exception e) {
             System.out.println(e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
         }
     }
 
-    private void processRequest() throws Exception {
-        HttpResponse response = null;
+    private void processRequests() throws Exception {
+        socket.setSoTimeout(KEEP_ALIVE_TIMEOUT);
 
         //Get references to sockets input and output streams
-        InputStream is = this.socket.getInputStream();
+        InputStream is = new BufferedInputStream(this.socket.getInputStream());
+        OutputStream os = new BufferedOutputStream(this.socket.getOutputStream());
 
-        //Set up input stream filter
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-        //Get the request line of HTTP message
-        String requestLine = br.readLine().trim();
+        boolean keepAlive = true;
+        while (keepAlive) {
+            //Get the header of next HTTP message
+            String header = HttpRequestHeader.readHeader(is);
+            if (header == null) {
+                break; // closed by client
+            }
+            HttpRequestHeader requestHeader = HttpRequestHeader.parse(header);
 
-        String req;
-        while ((req = br.readLine()) != null) {
-            req = req.trim().toLowerCase();
-            if (req.length() == 0) {
+            HttpResponse response = validate(requestHeader);
+            if (response != null) {
+                // Unable to find the end of this message - the connection can not be reused
+                response.sendResponse(os, false, requestHeader.isHttp11());
                 break;
             }
+
+            byte[] body = new byte[requestHeader.getContentLength()];
+            new DataInputStream(is).readFully(body);
+
+            response = createResponse(requestHeader, body);
+            keepAlive = response.sendResponse(os, requestHeader.isKeepAlive(), requestHeader.isHttp11());
         }
+    }
 
-        String q = requestLine.toLowerCase();
-        int six = q.indexOf(' ');
-        int eix = q.indexOf(" http");
-        if (eix != -1) {
-            requestLine = requestLine.substring(six, eix).trim();
+    /**
+     * Checks that the body of a request can be read
+     *
+     * @param requestHeader the request header
+     * @return an error response, or <tt>null</tt> if the request is ok
+     */
+    static HttpResponse validate(HttpRequestHeader requestHeader) {
+        if (requestHeader.isChunked()) {
+            return HttpResponse.createErrorResponse("Chunked request body not supported");
+        }
+        int contentLength = requestHeader.getContentLength();
+        if (contentLength < 0) {
+            return HttpResponse.createErrorResponse("Malformed Content-Length");
         }
+        if (contentLength > MAX_CONTENT_LENGTH) {
+            return HttpResponse.createErrorResponse("Request body too large");
+        }
+        return null;
+    }
+
+    /**
+     * Parses a HTTP request message, notifies the {@link CssXFireConnector} of any change or event carried
+     * in the query string, and creates the response to send back. Does not perform any I/O on the connection,
+     * so it may be called from any of the server engines.
+     *
+     * @param requestHeader the request line and header fields
+     * @param body          the message body, empty if there is none
+     * @return the response to send to the client
+     */
+    static HttpResponse createResponse(HttpRequestHeader requestHeader, byte[] body) {
+        HttpResponse response;
+
+        String requestLine = requestHeader.getUri();
 
         if (requestLine.startsWith("/files/")) {
             response = HttpResponse.createFileResponse(requestLine.substring("/files/".length()));
+        } else if (WebSocket.PATH.equals(getPath(requestLine))) {
+            // only the NIO engine keeps connections around for pushing
+            response = HttpResponse.createErrorResponse("WebSocket not supported");
+        } else if (BATCH_PATH.equals(getPath(requestLine))) {
+            if (!"POST".equals(requestHeader.getMethod())) {
+                response = HttpResponse.createErrorResponse("Batch requests must be POSTed");
+            } else {
+                response = createBatchResponse(body);
+            }
         } else {
             try {
                 // Parse query params
@@ -87,19 +155,10 @@ public class HttpRequest implements Runnable {
 
                 // Extract the parameters
                 String event = params.get("event");
-                String property = params.get("property");
-                String value = params.get("value");
-                String selector = params.get("selector");
-                String href = params.get("href");
-                String media = params.get("media");
-                boolean deleted = Boolean.parseBoolean(params.get("deleted"));
-                boolean important = Boolean.parseBoolean(params.get("important"));
+                FirebugChangesBean changesBean = createChangesBean(params);
 
                 // Notify application component
-                if (property != null && value != null && selector != null) {
-                    final FirebugChangesBean changesBean = new FirebugChangesBean(media != null ? media : EMPTY_STRING,
-                            href != null ? href : EMPTY_STRING,
-                            selector, property, value, deleted, important);
+                if (changesBean != null) {
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Got CSS property change: " + changesBean);
                     }
@@ -118,22 +177,125 @@ public class HttpRequest implements Runnable {
             }
         }
 
-        response.sendResponse(this.socket.getOutputStream());
+        return response;
+    }
 
-        //Close the streams
-        br.close();
-        socket.close();
+    /**
+     * Handles a batch of changes and events. The body holds one change or event per line, each encoded just like
+     * the query string of a single request, e.g.
+     * <pre>
+     * selector=a&amp;property=color&amp;value=red&amp;href=http%3A%2F%2Flocalhost%2Fstyle.css
+     * selector=a&amp;property=margin&amp;value=0&amp;href=http%3A%2F%2Flocalhost%2Fstyle.css
+     * event=refresh
+     * </pre>
+     * The whole body is parsed before anything is dispatched, so a malformed line rejects the entire batch.
+     *
+     * @param body the request body
+     * @return the response to send to the client
+     * @see #processBatch(String)
+     */
+    private static HttpResponse createBatchResponse(byte[] body) {
+        try {
+            processBatch(new String(body, "utf-8"));
+        } catch (UnsupportedEncodingException e) {
+            return HttpResponse.createErrorResponse(e.getMessage());
+        } catch (MalformedQueryException e) {
+            return HttpResponse.createErrorResponse(e.getMessage());
+        }
+        return HttpResponse.createEmptyOkResponse();
     }
 
+    /**
+     * Parses and dispatches a batch of changes and events, one per line. Consecutive changes are handed to the
+     * {@link CssXFireConnector} as one unit, while events are dispatched in between, in the order they were sent.
+     *
+     * @param text the lines
+     * @return the values of the <tt>id</tt> parameters of the lines, in order
+     * @throws MalformedQueryException if any line is malformed, in which case nothing is dispatched
+     */
+    static List<String> processBatch(String text) throws MalformedQueryException {
+        List<Map<String, String>> lines = new ArrayList<Map<String, String>>();
+        for (String line : text.split("\r?\n")) {
+            if (line.trim().length() > 0) {
+                lines.add(parseQuery(line.trim()));
+            }
+        }
 
-    private static Map<String, String> getQueryMap(String query) throws MalformedQueryException {
+        List<String> ids = new ArrayList<String>();
+        List<FirebugChangesBean> changesBeans = new ArrayList<FirebugChangesBean>();
+        for (Map<String, String> params : lines) {
+            FirebugChangesBean changesBean = createChangesBean(params);
+            if (changesBean != null) {
+                changesBeans.add(changesBean);
+            }
+            String event = params.get("event");
+            if (event != null) {
+                dispatchBatch(changesBeans);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Got event: " + event);
+                }
+                CssXFireConnector.getInstance().processEvent(new FirebugEvent(event));
+            }
+            String id = params.get("id");
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        dispatchBatch(changesBeans);
+
+        return ids;
+    }
+
+    private static void dispatchBatch(List<FirebugChangesBean> changesBeans) {
+        if (changesBeans.isEmpty()) {
+            return;
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Got batch of " + changesBeans.size() + " CSS property changes: " + changesBeans);
+        }
+        CssXFireConnector.getInstance().processCss(new ArrayList<FirebugChangesBean>(changesBeans));
+        changesBeans.clear();
+    }
+
+    /**
+     * Creates a bean from the parameters of a property change
+     *
+     * @param params the decoded parameters
+     * @return the bean, or <tt>null</tt> if the parameters do not describe a property change
+     */
+    private static FirebugChangesBean createChangesBean(Map<String, String> params) {
+        String property = params.get("property");
+        String value = params.get("value");
+        String selector = params.get("selector");
+        String href = params.get("href");
+        String media = params.get("media");
+        boolean deleted = Boolean.parseBoolean(params.get("deleted"));
+        boolean important = Boolean.parseBoolean(params.get("important"));
+
+        if (property == null || value == null || selector == null) {
+            return null;
+        }
+        return new FirebugChangesBean(media != null ? media : EMPTY_STRING,
+                href != null ? href : EMPTY_STRING,
+                selector, property, value, deleted, important);
+    }
+
+    private static String getPath(String uri) {
+        int i = uri.indexOf('?');
+        return i == -1 ? uri : uri.substring(0, i);
+    }
+
+    private static Map<String, String> getQueryMap(String uri) throws MalformedQueryException {
+        int i = uri.indexOf('?');
+        if (i == -1) {
+            return new HashMap<String, String>();
+        }
+        return parseQuery(uri.substring(i + 1));
+    }
+
+    private static Map<String, String> parseQuery(String query) throws MalformedQueryException {
         Map<String, String> map = new HashMap<String, String>();
         try {
-            int i = query.indexOf('?');
-            if (i == -1) {
-                return map;
-            }
-            query = query.substring(i + 1);
             String[] params = query.split("&");
             for (String param : params) {
                 int ix = param.indexOf('=');
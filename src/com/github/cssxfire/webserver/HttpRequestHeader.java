@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.webserver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The request line and header fields of a HTTP request message. Header field names are case insensitive
+ * and kept in lower case.
+ */
+public class HttpRequestHeader {
+    static final String ISO_8859_1 = "ISO-8859-1";
+    static final int MAX_HEADER_SIZE = 16 * 1024;
+    private static final String HTTP_1_0 = "HTTP/1.0";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    @NotNull
+    private final String method;
+    @NotNull
+    private final String uri;
+    @NotNull
+    private final String version;
+    @NotNull
+    private final Map<String, String> fields;
+
+    private HttpRequestHeader(@NotNull String method, @NotNull String uri, @NotNull String version, @NotNull Map<String, String> fields) {
+        this.method = method;
+        this.uri = uri;
+        this.version = version;
+        this.fields = fields;
+    }
+
+    /**
+     * Parses the header of a request message, i.e. everything up to (but not including) the message body.
+     *
+     * @param header the header text
+     * @return the parsed header
+     */
+    @NotNull
+    public static HttpRequestHeader parse(@NotNull String header) {
+        String[] lines = header.split("\r?\n");
+        String requestLine = lines.length > 0 ? lines[0].trim() : "";
+
+        String method = requestLine;
+        String uri = "";
+        String version = HTTP_1_0;
+        int six = requestLine.indexOf(' ');
+        if (six != -1) {
+            method = requestLine.substring(0, six);
+            String rest = requestLine.substring(six + 1);
+            int eix = rest.toUpperCase(Locale.ENGLISH).lastIndexOf(" HTTP/");
+            if (eix != -1) {
+                uri = rest.substring(0, eix).trim();
+                version = rest.substring(eix + 1).trim().toUpperCase(Locale.ENGLISH);
+            } else {
+                uri = rest.trim();
+            }
+        }
+
+        Map<String, String> fields = new HashMap<String, String>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int ix = line.indexOf(':');
+            if (ix <= 0) {
+                continue;
+            }
+            String name = line.substring(0, ix).trim().toLowerCase(Locale.ENGLISH);
+            String value = line.substring(ix + 1).trim();
+            String previous = fields.get(name);
+            fields.put(name, previous == null ? value : previous + ", " + value);
+        }
+
+        return new HttpRequestHeader(method.toUpperCase(Locale.ENGLISH), uri, version, fields);
+    }
+
+    /**
+     * Reads the header of the next request message from a stream. The stream is left positioned at the first
+     * byte of the message body (if any).
+     *
+     * @param is the stream to read from
+     * @return the header text, or <tt>null</tt> if the stream ended before a new message was started
+     * @throws IOException on read errors, if the stream ends in the middle of a header, or if the header is too large
+     */
+    @Nullable
+    public static String readHeader(@NotNull InputStream is) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        int newlines = 0;
+        int b;
+        while ((b = is.read()) != -1) {
+            if (bytes.size() == 0 && (b == '\r' || b == '\n')) {
+                continue; // ignore leading empty lines
+            }
+            bytes.write(b);
+            if (b == '\n') {
+                if (++newlines == 2) {
+                    return bytes.toString(ISO_8859_1);
+                }
+            } else if (b != '\r') {
+                newlines = 0;
+            }
+            if (bytes.size() > MAX_HEADER_SIZE) {
+                throw new IOException("Request header too large");
+            }
+        }
+        if (bytes.size() == 0) {
+            return null;
+        }
+        throw new IOException("Unexpected end of stream in request header");
+    }
+
+    /**
+     * Finds the end of a message header in a buffer.
+     *
+     * @param bytes  the buffer
+     * @param offset the start of the header
+     * @param length the number of valid bytes from <tt>offset</tt>
+     * @return the index right after the empty line ending the header, or <tt>-1</tt> if the header is not complete
+     */
+    public static int indexOfHeaderEnd(@NotNull byte[] bytes, int offset, int length) {
+        int newlines = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                if (++newlines == 2) {
+                    return i + 1;
+                }
+            } else if (b != '\r') {
+                newlines = 0;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes header bytes into text
+     *
+     * @param bytes  the buffer
+     * @param offset the start of the header
+     * @param length the length of the header
+     * @return the header text
+     */
+    @NotNull
+    public static String decode(@NotNull byte[] bytes, int offset, int length) {
+        try {
+            return new String(bytes, offset, length, ISO_8859_1);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // ISO-8859-1 is always supported
+        }
+    }
+
+    @NotNull
+    public String getMethod() {
+        return method;
+    }
+
+    @NotNull
+    public String getUri() {
+        return uri;
+    }
+
+    @NotNull
+    public String getVersion() {
+        return version;
+    }
+
+    @Nullable
+    public String getField(@NotNull String name) {
+        return fields.get(name.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Check if the client supports HTTP/1.1 features such as chunked transfer coding
+     *
+     * @return <tt>true</tt> if the request is a HTTP/1.1 request
+     */
+    public boolean isHttp11() {
+        return HTTP_1_1.equals(version);
+    }
+
+    /**
+     * Check if the client wants to keep the connection open after the response. A HTTP/1.1 connection is persistent
+     * unless the client asks to close it, while a HTTP/1.0 connection is persistent only if explicitly asked for.
+     *
+     * @return <tt>true</tt> if the connection should be kept open
+     */
+    public boolean isKeepAlive() {
+        String connection = getField("connection");
+        if (isHttp11()) {
+            return !containsToken(connection, "close");
+        }
+        return containsToken(connection, "keep-alive");
+    }
+
+    /**
+     * Check if the message body is sent with chunked transfer coding
+     *
+     * @return <tt>true</tt> if the request has a chunked body
+     */
+    public boolean isChunked() {
+        return containsToken(getField("transfer-encoding"), "chunked");
+    }
+
+    /**
+     * Get the length of the message body
+     *
+     * @return the number of bytes in the body, <tt>0</tt> if there is no body, or <tt>-1</tt> if the length is malformed
+     */
+    public int getContentLength() {
+        String contentLength = getField("content-length");
+        if (contentLength == null) {
+            return 0;
+        }
+        try {
+            int length = Integer.parseInt(contentLength.trim());
+            return length < 0 ? -1 : length;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Check if the client asks to switch the connection to the WebSocket protocol
+     *
+     * @return <tt>true</tt> if the request is a WebSocket opening handshake
+     */
+    public boolean isWebSocketUpgrade() {
+        return "GET".equals(method)
+                && containsToken(getField("upgrade"), "websocket")
+                && containsToken(getField("connection"), "upgrade");
+    }
+
+    private static boolean containsToken(@Nullable String value, @NotNull String token) {
+        if (value == null) {
+            return false;
+        }
+        for (String part : value.split(",")) {
+            if (token.equalsIgnoreCase(part.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + uri + " " + version;
+    }
+}
@@ -26,7 +26,11 @@ public class HttpResponse {
     private static final String CRLF = "\r\n";
     private static final String CONTENT_TYPE_TEXT_PLAIN = "Content-Type: text/plain; charset=utf-8";
     private static final byte[] RESPONSE_EMPTY = new byte[0];
-    private static final String STATUS_200_OK = "HTTP/1.0 200 OK";
+    private static final String STATUS_200_OK = "HTTP/1.1 200 OK";
+    private static final String TRANSFER_ENCODING_CHUNKED = "Transfer-Encoding: chunked";
+    private static final String CONTENT_LENGTH = "Content-Length: ";
+    private static final String CONNECTION_KEEP_ALIVE = "Connection: keep-alive";
+    private static final String CONNECTION_CLOSE = "Connection: close";
 
     public static HttpResponse createEmptyOkResponse() {
         return new HttpResponse();
@@ -60,9 +64,46 @@ public class HttpResponse {
         return new ByteArrayInputStream(RESPONSE_EMPTY);
     }
 
+    /**
+     * Get the length of the response body, if known before sending it
+     *
+     * @return the number of bytes in the response stream, or <tt>-1</tt> if unknown
+     */
+    protected long getContentLength() {
+        return RESPONSE_EMPTY.length;
+    }
+
+    /**
+     * Sends the response and signals the end of the body by closing the connection, like HTTP/1.0 does.
+     *
+     * @param socketOutputStream the stream to write to
+     * @throws IOException on write errors
+     */
     public void sendResponse(OutputStream socketOutputStream) throws IOException {
+        sendResponse(socketOutputStream, false, false);
+    }
+
+    /**
+     * Sends the response. The body is framed by a <tt>Content-Length</tt> header when its length is known, and
+     * with chunked transfer coding otherwise (when allowed). If neither is possible the connection must be closed
+     * after the response.
+     *
+     * @param socketOutputStream the stream to write to
+     * @param keepAlive          <tt>true</tt> if the client asked for a persistent connection
+     * @param chunkedAllowed     <tt>true</tt> if the client supports chunked transfer coding (HTTP/1.1)
+     * @return <tt>true</tt> if the connection may be kept open for another request
+     * @throws IOException on write errors
+     */
+    public boolean sendResponse(OutputStream socketOutputStream, boolean keepAlive, boolean chunkedAllowed) throws IOException {
         DataOutputStream os = new DataOutputStream(socketOutputStream);
 
+        long contentLength = getContentLength();
+        boolean chunked = contentLength < 0 && chunkedAllowed;
+        if (contentLength < 0 && !chunked) {
+            // the end of the body can only be signaled by closing the connection
+            keepAlive = false;
+        }
+
         // Send the status line.
         os.writeBytes(getStatusLine());
         os.writeBytes(CRLF);
@@ -71,18 +112,49 @@ public class HttpResponse {
         os.writeBytes(getContentTypeLine());
         os.writeBytes(CRLF);
 
+        // Send the framing and connection lines.
+        if (chunked) {
+            os.writeBytes(TRANSFER_ENCODING_CHUNKED);
+            os.writeBytes(CRLF);
+        } else if (contentLength >= 0) {
+            os.writeBytes(CONTENT_LENGTH + contentLength);
+            os.writeBytes(CRLF);
+        }
+        os.writeBytes(keepAlive ? CONNECTION_KEEP_ALIVE : CONNECTION_CLOSE);
+        os.writeBytes(CRLF);
+
         // Send a blank line to indicate the end of the header lines.
         os.writeBytes(CRLF);
 
         InputStream is = getResponseStream();
-        byte[] buffer = new byte[1024];
-
-        int bytes;
-
-        // Copy requested file into the socket's output stream.
-        while ((bytes = is.read(buffer)) != -1) {
-            os.write(buffer, 0, bytes);
+        try {
+            byte[] buffer = new byte[1024];
+
+            int bytes;
+
+            // Copy requested file into the socket's output stream.
+            while ((bytes = is.read(buffer)) != -1) {
+                if (chunked) {
+                    os.writeBytes(Integer.toHexString(bytes));
+                    os.writeBytes(CRLF);
+                    os.write(buffer, 0, bytes);
+                    os.writeBytes(CRLF);
+                } else {
+                    os.write(buffer, 0, bytes);
+                }
+            }
+            if (chunked) {
+                // Send the last chunk and an empty trailer.
+                os.writeBytes("0");
+                os.writeBytes(CRLF);
+                os.writeBytes(CRLF);
+            }
+        } finally {
+            is.close();
         }
+        os.flush();
+
+        return keepAlive;
     }
 
     private static class FileResponse extends HttpResponse {
@@ -99,6 +171,11 @@ public class HttpResponse {
             return is;
         }
 
+        @Override
+        protected long getContentLength() {
+            return -1; // streamed from the plugin jar
+        }
+
         @Override
         protected String getContentTypeLine() {
             // a massive list of content types...
@@ -134,7 +211,7 @@ public class HttpResponse {
 
         @Override
         protected String getStatusLine() {
-            return "HTTP/1.0 404 File not found: " + filename;
+            return "HTTP/1.1 404 File not found: " + filename;
         }
     }
 
@@ -147,7 +224,7 @@ public class HttpResponse {
 
         @Override
         protected String getStatusLine() {
-            return "HTTP/1.0 500 Internal server error: " + message;
+            return "HTTP/1.1 500 Internal server error: " + message;
         }
     }
 }
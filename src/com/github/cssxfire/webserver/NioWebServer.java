@@ -0,0 +1,610 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.webserver;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The non-blocking web server engine. A single selector thread accepts connections and reads the request headers,
+ * while the requests are parsed and dispatched by a small, fixed pool of worker threads. The work queue of the pool
+ * is bounded - when it is full the selector thread processes the request itself, which stops it from reading any
+ * more requests until the workers have caught up.
+ * <p>Connections are persistent (HTTP/1.1 keep-alive). Requests pipelined on a connection are processed one at a time,
+ * so that the responses are written in the same order as the requests were received.
+ * <p>A connection may also be upgraded to a {@link WebSocket}, which stays open for changes sent by the client as well
+ * as for messages {@link #push(String) pushed} by the IDE. Messages from a client are processed in order, one at a time.
+ *
+ * @see SimpleWebServer
+ */
+public class NioWebServer implements WebServer {
+    private static final Logger LOG = Logger.getInstance(NioWebServer.class.getName());
+    private static final int DEFAULT_NUM_WORKERS = 2;
+    private static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final long IDLE_CHECK_INTERVAL = 1000L;
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ThreadPoolExecutor workers;
+    /**
+     * Connections with a response ready to be written, handed over from the workers to the selector thread
+     */
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+    /**
+     * Connections upgraded to the WebSocket protocol
+     */
+    private final Set<Connection> webSockets = new CopyOnWriteArraySet<Connection>();
+    private volatile boolean running = true;
+    private long lastIdleCheck = System.currentTimeMillis();
+
+    public NioWebServer() throws IOException {
+        this(DEFAULT_PORT);
+    }
+
+    public NioWebServer(int port) throws IOException {
+        this(port, DEFAULT_NUM_WORKERS, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public NioWebServer(int port, int numWorkers, int queueCapacity) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            throw e;
+        }
+        workers = new ThreadPoolExecutor(numWorkers, numWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new WorkerThreadFactory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public void run() {
+        LOG.debug("Starting NIO web server on port " + serverChannel.socket().getLocalPort());
+        try {
+            while (running) {
+                selector.select(IDLE_CHECK_INTERVAL);
+                registerPendingWrites();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            if (key.isReadable()) {
+                                read(key);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(key);
+                            }
+                        }
+                    } catch (CancelledKeyException e) {
+                        close(key);
+                    } catch (IOException e) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Closing connection: " + e);
+                        }
+                        close(key);
+                    }
+                }
+
+                closeIdleConnections();
+            }
+        } catch (ClosedSelectorException e) {
+            // stopped
+        } catch (IOException e) {
+            LOG.warn("NIO web server terminated: " + e);
+        } finally {
+            shutdown();
+        }
+    }
+
+    public void stop() throws IOException {
+        running = false;
+        workers.shutdown();
+        serverChannel.close();
+        selector.wakeup();
+    }
+
+    public void push(String message) {
+        if (webSockets.isEmpty()) {
+            return;
+        }
+        byte[] frame = WebSocket.createTextFrame(message);
+        for (Connection connection : webSockets) {
+            connection.send(frame);
+            pendingWrites.add(connection);
+        }
+        selector.wakeup();
+    }
+
+    private void shutdown() {
+        workers.shutdownNow();
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        } catch (IOException e) {
+            LOG.debug(e);
+        } catch (ClosedSelectorException e) {
+            // already closed
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (!connection.read()) {
+            close(key);
+            return;
+        }
+        if (connection.webSocket) {
+            dispatchFrames(key);
+        } else {
+            dispatch(key);
+        }
+    }
+
+    /**
+     * Hands the next complete request received on a connection over to the workers. Does nothing if a request
+     * is already in progress or if more data is needed.
+     *
+     * @param key the key of the connection
+     * @throws ProtocolException if the client violates the WebSocket protocol after an upgrade
+     */
+    private void dispatch(SelectionKey key) throws ProtocolException {
+        final Connection connection = (Connection) key.attachment();
+        if (connection.inProgress) {
+            return;
+        }
+        int headerEnd = connection.findHeaderEnd();
+        if (headerEnd == -1) {
+            if (connection.readBuffer.position() > HttpRequestHeader.MAX_HEADER_SIZE) {
+                LOG.warn("Request header too large, closing connection");
+                close(key);
+            }
+            return; // need more data
+        }
+
+        final HttpRequestHeader requestHeader = HttpRequestHeader.parse(HttpRequestHeader.decode(connection.readBuffer.array(), 0, headerEnd));
+        HttpResponse errorResponse = HttpRequest.validate(requestHeader);
+        if (errorResponse != null) {
+            // Unable to find the end of this message - the connection can not be reused
+            connection.inProgress = true;
+            connection.prepareResponse(errorResponse, false, requestHeader.isHttp11());
+            updateInterestOps(key);
+            return;
+        }
+
+        if (requestHeader.isWebSocketUpgrade() && WebSocket.PATH.equals(requestHeader.getUri())) {
+            upgrade(key, headerEnd, requestHeader);
+            return;
+        }
+
+        final byte[] body = connection.takeMessage(headerEnd, requestHeader.getContentLength());
+        if (body == null) {
+            return; // need more data
+        }
+
+        // Stop reading while the request is being processed
+        connection.inProgress = true;
+        updateInterestOps(key);
+
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    connection.prepareResponse(HttpRequest.createResponse(requestHeader, body),
+                            requestHeader.isKeepAlive(), requestHeader.isHttp11());
+                } catch (Exception e) {
+                    LOG.warn("Unable to process request: " + e);
+                    connection.prepareResponse(HttpResponse.createErrorResponse(e.toString()), false, requestHeader.isHttp11());
+                }
+                pendingWrites.add(connection);
+                selector.wakeup();
+            }
+        });
+    }
+
+    /**
+     * Completes a WebSocket opening handshake and switches the connection to the WebSocket protocol
+     *
+     * @param key           the key of the connection
+     * @param headerEnd     the length of the handshake request
+     * @param requestHeader the handshake request
+     * @throws ProtocolException if the client violates the protocol
+     */
+    private void upgrade(SelectionKey key, int headerEnd, HttpRequestHeader requestHeader) throws ProtocolException {
+        Connection connection = (Connection) key.attachment();
+        byte[] handshake = WebSocket.createHandshakeResponse(requestHeader);
+        if (handshake == null) {
+            connection.inProgress = true;
+            connection.prepareResponse(HttpResponse.createErrorResponse("Unsupported WebSocket handshake"), false, requestHeader.isHttp11());
+            updateInterestOps(key);
+            return;
+        }
+        connection.consume(headerEnd);
+        connection.webSocket = true;
+        connection.keepAlive = true;
+        connection.send(handshake);
+        webSockets.add(connection);
+        updateInterestOps(key);
+        // the client may send frames right after the handshake
+        dispatchFrames(key);
+    }
+
+    /**
+     * Handles the frames received on a WebSocket connection. Control frames are answered right away, while
+     * a complete message is handed over to the workers. Does nothing if a message is already in progress.
+     *
+     * @param key the key of the connection
+     * @throws ProtocolException if the client violates the protocol
+     */
+    private void dispatchFrames(SelectionKey key) throws ProtocolException {
+        final Connection connection = (Connection) key.attachment();
+        while (!connection.inProgress && connection.keepAlive) {
+            WebSocket.Frame frame = WebSocket.decodeFrame(connection.readBuffer.array(), connection.readBuffer.position(), HttpRequest.MAX_CONTENT_LENGTH);
+            if (frame == null) {
+                break; // need more data
+            }
+            connection.consume(frame.length);
+
+            switch (frame.opcode) {
+                case WebSocket.OPCODE_PING:
+                    connection.send(WebSocket.createFrame(WebSocket.OPCODE_PONG, frame.payload));
+                    break;
+                case WebSocket.OPCODE_PONG:
+                    break;
+                case WebSocket.OPCODE_CLOSE:
+                    // echo the status code and close once it has been written
+                    byte[] status = new byte[Math.min(2, frame.payload.length)];
+                    System.arraycopy(frame.payload, 0, status, 0, status.length);
+                    webSockets.remove(connection);
+                    connection.send(WebSocket.createFrame(WebSocket.OPCODE_CLOSE, status));
+                    connection.keepAlive = false;
+                    break;
+                case WebSocket.OPCODE_TEXT:
+                case WebSocket.OPCODE_CONTINUATION:
+                    if ((frame.opcode == WebSocket.OPCODE_TEXT) == connection.fragmented) {
+                        throw new ProtocolException("Unexpected frame in message");
+                    }
+                    if (connection.message.size() + frame.payload.length > HttpRequest.MAX_CONTENT_LENGTH) {
+                        throw new ProtocolException("Message too large");
+                    }
+                    connection.message.write(frame.payload, 0, frame.payload.length);
+                    connection.fragmented = !frame.fin;
+                    if (frame.fin) {
+                        dispatchMessage(connection, connection.takeText());
+                    }
+                    break;
+                default:
+                    throw new ProtocolException("Unsupported opcode " + frame.opcode);
+            }
+        }
+        updateInterestOps(key);
+    }
+
+    private void dispatchMessage(final Connection connection, final String message) {
+        // Stop reading while the message is being processed
+        connection.inProgress = true;
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    String reply = WebSocket.processMessage(message);
+                    if (reply != null) {
+                        connection.send(WebSocket.createTextFrame(reply));
+                    }
+                } catch (Exception e) {
+                    LOG.warn("Unable to process message: " + e);
+                }
+                connection.messageDone = true;
+                pendingWrites.add(connection);
+                selector.wakeup();
+            }
+        });
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        if (!connection.write()) {
+            return; // more to write
+        }
+        if (!connection.keepAlive) {
+            close(key);
+            return;
+        }
+        connection.touch();
+        if (connection.webSocket) {
+            updateInterestOps(key);
+            return;
+        }
+        // Response is complete - continue with any pipelined request
+        connection.inProgress = false;
+        updateInterestOps(key);
+        dispatch(key);
+    }
+
+    private void registerPendingWrites() {
+        Connection connection;
+        while ((connection = pendingWrites.poll()) != null) {
+            SelectionKey key = connection.channel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                updateInterestOps(key);
+                if (connection.messageDone) {
+                    // Message is complete - continue with any following message
+                    connection.messageDone = false;
+                    connection.inProgress = false;
+                    try {
+                        dispatchFrames(key);
+                    } catch (ProtocolException e) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Closing connection: " + e);
+                        }
+                        close(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads from a connection unless a request is in progress, and writes to it while there is output pending
+     *
+     * @param key the key of the connection
+     */
+    private void updateInterestOps(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        int ops = connection.inProgress || !connection.keepAlive ? 0 : SelectionKey.OP_READ;
+        if (connection.hasPendingOutput()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    private void closeIdleConnections() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < IDLE_CHECK_INTERVAL) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                Connection connection = (Connection) attachment;
+                // the push channel is kept open for as long as the client wants it
+                if (!connection.inProgress && !connection.webSocket && now - connection.lastActivity > HttpRequest.KEEP_ALIVE_TIMEOUT) {
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void close(SelectionKey key) {
+        if (key.attachment() instanceof Connection) {
+            webSockets.remove(key.attachment());
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOG.debug(e);
+        }
+    }
+
+    /**
+     * State of a single client connection. Reading and writing is done by the selector thread only, while
+     * responses and pushed messages are queued by any thread.
+     */
+    private static class Connection {
+        private final SocketChannel channel;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+        private volatile boolean keepAlive;
+        /**
+         * <tt>true</tt> from the dispatch of a request until its response has been written, or from the dispatch
+         * of a WebSocket message until it has been processed
+         */
+        private boolean inProgress;
+        private boolean webSocket;
+        /**
+         * Set by the worker when a WebSocket message has been processed
+         */
+        private volatile boolean messageDone;
+        /**
+         * The fragments of the WebSocket message being received
+         */
+        private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        private boolean fragmented;
+        private long lastActivity = System.currentTimeMillis();
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Reads available bytes from the channel
+         *
+         * @return <tt>false</tt> if the connection should be closed
+         * @throws IOException on read errors
+         */
+        private boolean read() throws IOException {
+            if (!readBuffer.hasRemaining()) {
+                ensureCapacity(readBuffer.capacity() * 2);
+            }
+            touch();
+            return channel.read(readBuffer) != -1;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (readBuffer.capacity() < capacity) {
+                ByteBuffer larger = ByteBuffer.allocate(capacity);
+                readBuffer.flip();
+                larger.put(readBuffer);
+                readBuffer = larger;
+            }
+        }
+
+        /**
+         * Finds the end of the request header at the start of the read buffer.
+         *
+         * @return the length of the header, or <tt>-1</tt> if the header is not complete
+         */
+        private int findHeaderEnd() {
+            byte[] bytes = readBuffer.array();
+            int length = readBuffer.position();
+            int start = 0;
+            while (start < length && (bytes[start] == '\r' || bytes[start] == '\n')) {
+                start++; // ignore leading empty lines
+            }
+            if (start > 0) {
+                consume(start);
+                length -= start;
+            }
+            return HttpRequestHeader.indexOfHeaderEnd(bytes, 0, length);
+        }
+
+        /**
+         * Removes a complete request message from the start of the read buffer. Any following (pipelined)
+         * data is kept.
+         *
+         * @param headerLength  the length of the header
+         * @param contentLength the length of the body
+         * @return the body, or <tt>null</tt> if the message is not yet complete
+         */
+        private byte[] takeMessage(int headerLength, int contentLength) {
+            int messageLength = headerLength + contentLength;
+            if (readBuffer.position() < messageLength) {
+                ensureCapacity(messageLength);
+                return null;
+            }
+            byte[] body = new byte[contentLength];
+            System.arraycopy(readBuffer.array(), headerLength, body, 0, contentLength);
+            consume(messageLength);
+            return body;
+        }
+
+        private void consume(int length) {
+            readBuffer.flip();
+            readBuffer.position(length);
+            readBuffer.compact();
+        }
+
+        /**
+         * Writes the response into memory, ready to be sent by the selector thread
+         *
+         * @param response       the response
+         * @param keepAlive      <tt>true</tt> if the connection should be kept open after the response
+         * @param chunkedAllowed <tt>true</tt> if the client supports chunked transfer coding
+         */
+        private void prepareResponse(HttpResponse response, boolean keepAlive, boolean chunkedAllowed) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                this.keepAlive = response.sendResponse(bytes, keepAlive, chunkedAllowed);
+            } catch (IOException e) {
+                // can not happen when writing to memory
+                LOG.error(e);
+                this.keepAlive = false;
+            }
+            send(bytes.toByteArray());
+        }
+
+        /**
+         * Queues bytes to be sent by the selector thread
+         *
+         * @param bytes the bytes
+         */
+        private void send(byte[] bytes) {
+            writeQueue.add(ByteBuffer.wrap(bytes));
+        }
+
+        private boolean hasPendingOutput() {
+            return !writeQueue.isEmpty();
+        }
+
+        private String takeText() {
+            try {
+                return message.toString("utf-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                message.reset();
+            }
+        }
+
+        /**
+         * Writes as much as possible of the queued output
+         *
+         * @return <tt>true</tt> if all output has been written
+         * @throws IOException on write errors
+         */
+        private boolean write() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = writeQueue.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    return false;
+                }
+                writeQueue.poll();
+            }
+            return true;
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "CSS-X-Fire web server worker " + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -23,12 +23,14 @@ import java.io.IOException;
 import java.net.ServerSocket;
 
 /**
- * Created by IntelliJ IDEA.
+ * The blocking web server engine, which spawns a new thread for every accepted connection.
+ * <p><p>Created by IntelliJ IDEA.
  * User: Ronnie
+ *
+ * @see NioWebServer
  */
-public class SimpleWebServer implements Runnable {
+public class SimpleWebServer implements WebServer {
     private static final Logger LOG = Logger.getInstance(SimpleWebServer.class.getName());
-    public static final int DEFAULT_PORT = 6776;
     private ServerSocket listenSocket;
 
     public SimpleWebServer() throws IOException {
@@ -58,5 +60,9 @@ public class SimpleWebServer implements Runnable {
     public void stop() throws IOException {
         listenSocket.close();
     }
+
+    public void push(String message) {
+        // no push channel
+    }
 }
 
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.webserver;
+
+import java.io.IOException;
+
+/**
+ * The local web server receiving changes from the browser extension. Implementations are started by running them
+ * in a dedicated thread and serve requests until {@link #stop()} is invoked.
+ *
+ * @see SimpleWebServer
+ * @see NioWebServer
+ */
+public interface WebServer extends Runnable {
+    public static final int DEFAULT_PORT = 6776;
+
+    public void stop() throws IOException;
+
+    /**
+     * Sends a message to every client connected to the push channel. Engines without a push channel ignore it.
+     *
+     * @param message the message text
+     * @see WebSocket
+     */
+    public void push(String message);
+}
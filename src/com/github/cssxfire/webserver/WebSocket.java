@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 Ronnie Kolehmainen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.cssxfire.webserver;
+
+import com.github.cssxfire.FirebugChangesBean;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/**
+ * The WebSocket protocol (RFC 6455) as used by the push channel of the {@link NioWebServer}.
+ * <p>A client opens the channel with a WebSocket handshake on {@link #PATH}. Each text message from the client holds
+ * one or more changes or events, one per line and encoded just like the lines of a batch request. A line may carry
+ * an <tt>id</tt> parameter, which is acknowledged with an <tt>ack=&lt;id&gt;</tt> line once the line has been
+ * dispatched. Messages from the IDE are lines of URL encoded parameters as well, e.g.
+ * <pre>
+ * ack=17
+ * matched=2&amp;media=&amp;selector=a&amp;property=color
+ * error=MalformedQueryException%3A+...
+ * </pre>
+ */
+public class WebSocket {
+    static final String PATH = "/ws";
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_BINARY = 0x2;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    private static final String SUPPORTED_VERSION = "13";
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private WebSocket() {
+    }
+
+    /**
+     * Creates the response to a WebSocket opening handshake
+     *
+     * @param requestHeader the handshake request
+     * @return the raw <tt>101 Switching Protocols</tt> response, or <tt>null</tt> if the handshake is not acceptable
+     */
+    @Nullable
+    static byte[] createHandshakeResponse(@NotNull HttpRequestHeader requestHeader) {
+        String key = requestHeader.getField("sec-websocket-key");
+        if (key == null || !SUPPORTED_VERSION.equals(requestHeader.getField("sec-websocket-version"))) {
+            return null;
+        }
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + createAcceptKey(key.trim()) + "\r\n"
+                + "\r\n";
+        return encode(response, HttpRequestHeader.ISO_8859_1);
+    }
+
+    private static String createAcceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return base64(sha1.digest(encode(key + ACCEPT_GUID, HttpRequestHeader.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String base64(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < bytes.length; i += 3) {
+            int remaining = bytes.length - i;
+            int n = (bytes[i] & 0xff) << 16;
+            if (remaining > 1) {
+                n |= (bytes[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                n |= bytes[i + 2] & 0xff;
+            }
+            sb.append(BASE64[(n >> 18) & 0x3f]);
+            sb.append(BASE64[(n >> 12) & 0x3f]);
+            sb.append(remaining > 1 ? BASE64[(n >> 6) & 0x3f] : '=');
+            sb.append(remaining > 2 ? BASE64[n & 0x3f] : '=');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Dispatches the changes and events of a text message from a client
+     *
+     * @param message the message text
+     * @return the reply to send back, or <tt>null</tt> if there is nothing to reply
+     */
+    @Nullable
+    static String processMessage(@NotNull String message) {
+        try {
+            List<String> ids = HttpRequest.processBatch(message);
+            if (ids.isEmpty()) {
+                return null;
+            }
+            StringBuilder reply = new StringBuilder();
+            for (String id : ids) {
+                if (reply.length() > 0) {
+                    reply.append('\n');
+                }
+                reply.append("ack=").append(encodeParameter(id));
+            }
+            return reply.toString();
+        } catch (HttpRequest.MalformedQueryException e) {
+            return "error=" + encodeParameter(e.toString());
+        }
+    }
+
+    /**
+     * Creates the message telling clients how many candidates in the IDE matched a change
+     *
+     * @param changesBean the change
+     * @param candidates  the number of matching declarations
+     * @return the message text
+     */
+    @NotNull
+    public static String createMatchedMessage(@NotNull FirebugChangesBean changesBean, int candidates) {
+        return "matched=" + candidates
+                + "&media=" + encodeParameter(changesBean.getMedia())
+                + "&selector=" + encodeParameter(changesBean.getSelector())
+                + "&property=" + encodeParameter(changesBean.getProperty());
+    }
+
+    private static String encodeParameter(String value) {
+        try {
+            return URLEncoder.encode(value, "utf-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] encode(String s, String charset) {
+        try {
+            return s.getBytes(charset);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates an (unmasked) server frame holding a text message
+     *
+     * @param text the message
+     * @return the encoded frame
+     */
+    @NotNull
+    static byte[] createTextFrame(@NotNull String text) {
+        return createFrame(OPCODE_TEXT, encode(text, "utf-8"));
+    }
+
+    /**
+     * Creates an (unmasked) server frame
+     *
+     * @param opcode  the frame opcode
+     * @param payload the application data
+     * @return the encoded frame
+     */
+    @NotNull
+    static byte[] createFrame(int opcode, @NotNull byte[] payload) {
+        int length = payload.length;
+        int headerLength = length < 126 ? 2 : length <= 0xffff ? 4 : 10;
+        byte[] frame = new byte[headerLength + length];
+        frame[0] = (byte) (0x80 | opcode); // FIN
+        if (length < 126) {
+            frame[1] = (byte) length;
+        } else if (length <= 0xffff) {
+            frame[1] = 126;
+            frame[2] = (byte) (length >> 8);
+            frame[3] = (byte) length;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[9 - i] = (byte) ((long) length >> (8 * i));
+            }
+        }
+        System.arraycopy(payload, 0, frame, headerLength, length);
+        return frame;
+    }
+
+    /**
+     * Decodes a client frame at the start of a buffer
+     *
+     * @param bytes      the buffer
+     * @param length     the number of bytes available in the buffer
+     * @param maxPayload the largest payload accepted
+     * @return the frame, or <tt>null</tt> if the frame is not complete
+     * @throws ProtocolException if the frame violates the protocol
+     */
+    @Nullable
+    static Frame decodeFrame(@NotNull byte[] bytes, int length, int maxPayload) throws ProtocolException {
+        if (length < 2) {
+            return null;
+        }
+        boolean fin = (bytes[0] & 0x80) != 0;
+        int opcode = bytes[0] & 0x0f;
+        if ((bytes[0] & 0x70) != 0) {
+            throw new ProtocolException("Reserved bits set");
+        }
+        if ((bytes[1] & 0x80) == 0) {
+            throw new ProtocolException("Client frame not masked");
+        }
+        long payloadLength = bytes[1] & 0x7f;
+        int offset = 2;
+        if (payloadLength == 126) {
+            if (length < offset + 2) {
+                return null;
+            }
+            payloadLength = ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+            offset += 2;
+        } else if (payloadLength == 127) {
+            if (length < offset + 8) {
+                return null;
+            }
+            payloadLength = 0;
+            for (int i = 0; i < 8; i++) {
+                payloadLength = (payloadLength << 8) | (bytes[offset + i] & 0xff);
+            }
+            offset += 8;
+        }
+        if (opcode >= OPCODE_CLOSE && (!fin || payloadLength > MAX_CONTROL_PAYLOAD)) {
+            throw new ProtocolException("Malformed control frame");
+        }
+        if (payloadLength < 0 || payloadLength > maxPayload) {
+            throw new ProtocolException("Frame too large");
+        }
+        int maskOffset = offset;
+        offset += 4;
+        if (length < offset + payloadLength) {
+            return null;
+        }
+        byte[] payload = new byte[(int) payloadLength];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (bytes[offset + i] ^ bytes[maskOffset + (i & 3)]);
+        }
+        return new Frame(fin, opcode, payload, offset + payload.length);
+    }
+
+    /**
+     * A decoded client frame
+     */
+    static class Frame {
+        final boolean fin;
+        final int opcode;
+        @NotNull
+        final byte[] payload;
+        /**
+         * The number of bytes the frame occupied in the buffer
+         */
+        final int length;
+
+        private Frame(boolean fin, int opcode, @NotNull byte[] payload, int length) {
+            this.fin = fin;
+            this.opcode = opcode;
+            this.payload = payload;
+            this.length = length;
+        }
+    }
+}